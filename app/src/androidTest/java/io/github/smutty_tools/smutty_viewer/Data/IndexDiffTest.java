@@ -0,0 +1,58 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks packages listed several times are only accepted once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IndexDiffTest {
+
+    private AppDatabase appDatabase;
+
+    private static SmuttyPackage pkg(int i) {
+        return new SmuttyPackage(String.format(Locale.ROOT, "%032x", i), true, "image_" + i + ".json.xz", "image", i * 100 + 99, i * 100, false);
+    }
+
+    @Before
+    public void setUp() {
+        appDatabase = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(), AppDatabase.class)
+                .addCallback(AppDatabase.CALLBACK)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        appDatabase.close();
+    }
+
+    @Test
+    public void acceptsEachPackageOnce() {
+        IndexDiff indexDiff = new IndexDiff(appDatabase, PackageWriteBuffer.DEFAULT_CHUNK_SIZE);
+        assertTrue(indexDiff.add(pkg(1)));
+        assertTrue(indexDiff.add(pkg(2)));
+        // listed twice in the same index
+        assertFalse(indexDiff.add(pkg(1)));
+        indexDiff.endSource();
+        // listed again by the next index
+        assertFalse(indexDiff.add(pkg(2)));
+        assertTrue(indexDiff.add(pkg(3)));
+        indexDiff.endSource();
+        indexDiff.finish();
+        assertEquals(2, indexDiff.getDuplicates());
+        assertEquals(3, indexDiff.getInserted());
+        assertEquals(3, appDatabase.smuttyPackageDao().findByMd5(Arrays.asList(pkg(1).getMd5(), pkg(2).getMd5(), pkg(3).getMd5())).size());
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the range queries of the prefetcher seek the index, and that their cost
+ * does not depend on the position of the content id among 100k packages.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackageRangeQueryBenchmark {
+
+    private static final String TAG = "RangeQueryBenchmark";
+    private static final String DATABASE_NAME = "range_query_benchmark";
+    private static final int ROWS = 100000;
+    private static final int LOOKUPS = 1000;
+    private static final int LOOKAHEAD = 64;
+
+    private Context context;
+    private AppDatabase appDatabase;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        appDatabase = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME).build();
+        PackageWriteBuffer writeBuffer = new PackageWriteBuffer(appDatabase, PackageWriteBuffer.DEFAULT_CHUNK_SIZE);
+        for (int i = 0; i < ROWS; i++) {
+            writeBuffer.insert(new SmuttyPackage(String.format(Locale.ROOT, "%032x", i), true, "pkg" + i + ".json.xz", "image", i * 100 + 99, i * 100, false));
+        }
+        writeBuffer.flush();
+    }
+
+    @After
+    public void tearDown() {
+        appDatabase.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private String queryPlan(String sql, Object... args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = appDatabase.query("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    @Test
+    public void rangeQueriesSeekTheIndex() {
+        // the same statements as the dao, bounded on min_id beyond the content type
+        String holderPlan = queryPlan("SELECT * FROM packages WHERE referenced_in_index = 1 AND content_type = ? AND min_id <= ? ORDER BY min_id DESC LIMIT 1",
+                "image", ROWS * 50);
+        assertTrue(holderPlan, holderPlan.contains("min_id<?"));
+        String followingPlan = queryPlan("SELECT * FROM packages WHERE referenced_in_index = 1 AND content_type = ? AND min_id >= ? ORDER BY min_id LIMIT ?",
+                "image", ROWS * 50, LOOKAHEAD);
+        assertTrue(followingPlan, followingPlan.contains("min_id>?"));
+    }
+
+    /**
+     * @return average time of a prefetch lookup around the id, in microseconds
+     */
+    private long timeLookups(int baseId) {
+        SmuttyPackageDao pkgDao = appDatabase.smuttyPackageDao();
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            int contentId = baseId + random.nextInt(100 * 100);
+            SmuttyPackage holder = pkgDao.findLastStartingAtOrBefore("image", contentId);
+            assertNotNull(holder);
+            assertTrue(holder.getMaxId() >= contentId);
+            List<SmuttyPackage> packages = pkgDao.getFromMinId("image", holder.getMinId(), LOOKAHEAD);
+            assertEquals(LOOKAHEAD, packages.size());
+            assertEquals(contentId / 100 * 100, packages.get(0).getMinId());
+        }
+        return (System.nanoTime() - start) / 1000 / LOOKUPS;
+    }
+
+    @Test
+    public void prefetchLookupCostIsFlat() {
+        timeLookups(0);
+        long lowMicros = timeLookups(0);
+        long highMicros = timeLookups((ROWS - 200) * 100);
+        Log.i(TAG, "Lookup of " + LOOKAHEAD + " packages from a content id: " + lowMicros + " us near the first package, "
+                + highMicros + " us near the last");
+        // a walk from the first package would be orders of magnitude slower near the last one
+        assertTrue(highMicros < 4 * lowMicros + 100);
+    }
+}
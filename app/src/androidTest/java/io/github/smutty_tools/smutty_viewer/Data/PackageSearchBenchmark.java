@@ -0,0 +1,132 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.smutty_tools.smutty_viewer.Tools.SortedIntArrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times combined searches on 100k packages, and checks the full text index follows the packages.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackageSearchBenchmark {
+
+    private static final String TAG = "PackageSearchBenchmark";
+    private static final String DATABASE_NAME = "package_search_benchmark";
+    private static final int ROWS = 100000;
+    private static final int PAGE_SIZE = 50;
+    private static final long MAX_QUERY_MILLIS = 50;
+
+    private static final String[] TYPES = { "image", "video", "text" };
+
+    private Context context;
+    private AppDatabase appDatabase;
+    private PackageSearch search;
+
+    private static String md5(int i) {
+        return String.format(Locale.ROOT, "%032x", i);
+    }
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        appDatabase = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME)
+                .addCallback(AppDatabase.CALLBACK)
+                .build();
+        PackageWriteBuffer writeBuffer = new PackageWriteBuffer(appDatabase, PackageWriteBuffer.DEFAULT_CHUNK_SIZE);
+        for (int i = 0; i < ROWS; i++) {
+            String type = TYPES[i % TYPES.length];
+            writeBuffer.insert(new SmuttyPackage(md5(i), true, type + "_" + (i / 1000) + "_" + i + ".json.xz", type, i * 100 + 99, i * 100, i % 10 == 0));
+        }
+        writeBuffer.flush();
+        for (int i = 0; i < ROWS; i += 10) {
+            int[] ids = { i * 100 };
+            appDatabase.tagPostingDao().insert(Arrays.asList(new TagPosting(i % 20 == 0 ? "cat" : "dog", md5(i), TYPES[i % TYPES.length],
+                    SortedIntArrays.encode(ids, 1))));
+        }
+        search = new PackageSearch(appDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        appDatabase.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private long timePages(PackageSearch.Filter filter, int pages) {
+        long start = System.currentTimeMillis();
+        SmuttyPackage last = null;
+        for (int i = 0; i < pages; i++) {
+            List<SmuttyPackage> page = search.page(filter, last, PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            last = page.get(page.size() - 1);
+        }
+        return (System.currentTimeMillis() - start) / pages;
+    }
+
+    @Test
+    public void combinedFiltersAreFast() {
+        PackageSearch.Filter text = new PackageSearch.Filter().text("image 42");
+        PackageSearch.Filter range = new PackageSearch.Filter().contentType("video").idRange(5000000, 6000000);
+        PackageSearch.Filter tagged = new PackageSearch.Filter().contentType("image").tag("cat");
+        PackageSearch.Filter combined = new PackageSearch.Filter().text("image").contentType("image").idRange(0, 5000000).tag("cat");
+        long textMillis = timePages(text, 10);
+        long rangeMillis = timePages(range, 10);
+        long taggedMillis = timePages(tagged, 10);
+        long combinedMillis = timePages(combined, 10);
+        Log.i(TAG, "Page of " + PAGE_SIZE + ": text " + textMillis + " ms, type and range " + rangeMillis + " ms, tag "
+                + taggedMillis + " ms, combined " + combinedMillis + " ms");
+        assertTrue(textMillis < MAX_QUERY_MILLIS);
+        assertTrue(rangeMillis < MAX_QUERY_MILLIS);
+        assertTrue(taggedMillis < MAX_QUERY_MILLIS);
+        assertTrue(combinedMillis < MAX_QUERY_MILLIS);
+        // tagged cat every 20 packages, image every 3
+        assertEquals((ROWS + 59) / 60, search.count(tagged));
+    }
+
+    @Test
+    public void indexFollowsPackages() {
+        PackageSearch.Filter filter = new PackageSearch.Filter().text("renamed");
+        assertEquals(0, search.count(filter));
+        SmuttyPackage pkg = new SmuttyPackage(md5(7), true, "renamed.json.xz", "video", 799, 700, false);
+        // replaced row
+        appDatabase.smuttyPackageDao().insert(pkg);
+        assertEquals(1, search.count(filter));
+        pkg.setFileName("moved.json.xz");
+        appDatabase.smuttyPackageDao().update(pkg);
+        assertEquals(0, search.count(filter));
+        assertEquals(1, search.count(new PackageSearch.Filter().text("moved")));
+        appDatabase.smuttyPackageDao().truncate();
+        assertEquals(0, search.count(new PackageSearch.Filter().text("image")));
+    }
+
+    @Test
+    public void findsUppercaseNamesOfAnyScript() {
+        // the tokenizer folding letters of every script is built in from Android 5.0
+        Assume.assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+        appDatabase.smuttyPackageDao().insert(new SmuttyPackage(md5(ROWS), true,
+                "\u00c9va_\u0391\u0398\u0397\u039d\u0391_\u041c\u043e\u0441\u043a\u0432\u0430.json.xz", "image", 0, 0, false));
+        assertEquals(1, search.count(new PackageSearch.Filter().text("\u00e9va")));
+        assertEquals(1, search.count(new PackageSearch.Filter().text("\u0391\u03b8\u03b7\u03bd\u03b1")));
+        assertEquals(1, search.count(new PackageSearch.Filter().text("\u043c\u043e\u0441\u043a\u0432\u0430")));
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares one implicit transaction per row with chunked transactions on a 100k rows import.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackageWriteBufferBenchmark {
+
+    private static final String TAG = "WriteBufferBenchmark";
+    private static final String DATABASE_NAME = "write_buffer_benchmark";
+    private static final int ROWS = 100000;
+
+    private Context context;
+    private AppDatabase appDatabase;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        // on disk, journal syncs are what is being measured
+        appDatabase = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME).build();
+    }
+
+    @After
+    public void tearDown() {
+        appDatabase.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private static SmuttyPackage makePackage(int i) {
+        return new SmuttyPackage(String.format(Locale.ROOT, "%032x", i), true, "pkg" + i + ".json.xz", "image", i * 100 + 99, i * 100, i % 2 == 0);
+    }
+
+    @Test
+    public void chunkedImportIsFaster() {
+        SmuttyPackageDao pkgDao = appDatabase.smuttyPackageDao();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ROWS; i++) {
+            pkgDao.insert(makePackage(i));
+        }
+        long perRowMillis = System.currentTimeMillis() - start;
+        pkgDao.truncate();
+
+        PackageWriteBuffer writeBuffer = new PackageWriteBuffer(appDatabase, PackageWriteBuffer.DEFAULT_CHUNK_SIZE);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < ROWS; i++) {
+            writeBuffer.insert(makePackage(i));
+        }
+        writeBuffer.flush();
+        long chunkedMillis = System.currentTimeMillis() - start;
+
+        Log.i(TAG, "Per row: " + perRowMillis + " ms, chunked: " + chunkedMillis + " ms, "
+                + writeBuffer.getRowsPerSecond() + " rows/s");
+        assertEquals(ROWS, writeBuffer.getRowsWritten());
+        assertTrue(chunkedMillis < perRowMillis);
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.smutty_tools.smutty_viewer.Decompress;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the extraction modes of xz files on 4 MB of data, and the parallel extraction
+ * of multi-block files with a growing number of threads.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DecompressorBenchmark {
+
+    private static final String TAG = "DecompressorBenchmark";
+    private static final int SIZE = 4 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int ROUNDS = 5;
+
+    private interface Extraction {
+        int run(File file) throws IOException;
+    }
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "decompressor_benchmark");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(1);
+        for (int i = 0; i < size; i += 64) {
+            Arrays.fill(data, i, Math.min(size, i + 64), (byte) random.nextInt(16));
+        }
+        return data;
+    }
+
+    private File write(String name, byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XZOutputStream xzOut = new XZOutputStream(outputStream, new LZMA2Options(1));
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            xzOut.write(data, offset, Math.min(blockSize, data.length - offset));
+            xzOut.endBlock();
+        }
+        xzOut.close();
+        File file = new File(directory, name);
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(outputStream.toByteArray());
+        fileOutputStream.close();
+        return file;
+    }
+
+    private static String measure(Extraction extraction, File file) throws IOException {
+        // warm up
+        extraction.run(file);
+        long start = System.nanoTime();
+        long bytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            bytes += extraction.run(file);
+        }
+        return String.format(Locale.ROOT, "%.0f MB/s", bytes * 1000.0 / (System.nanoTime() - start));
+    }
+
+    @Test
+    public void extractionModes() throws IOException {
+        Extraction streamed = new Extraction() {
+            @Override
+            public int run(File file) throws IOException {
+                InputStream inputStream = Decompressor.streamXz(new FileInputStream(file));
+                byte[] buffer = new byte[64 * 1024];
+                int total = 0;
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    total += count;
+                }
+                inputStream.close();
+                return total;
+            }
+        };
+        Extraction indexed = new Extraction() {
+            @Override
+            public int run(File file) throws IOException {
+                return Decompressor.extractXz(file, SIZE).length;
+            }
+        };
+        byte[] data = content(SIZE);
+        File[] files = { write("single", data, data.length), write("multi", data, BLOCK_SIZE) };
+        String[] names = { "single block", "multi block" };
+        for (int i = 0; i < files.length; i++) {
+            assertEquals(SIZE, indexed.run(files[i]));
+            Log.i(TAG, "Extraction of " + names[i] + " " + SIZE + " bytes: streamed " + measure(streamed, files[i])
+                    + ", indexed " + measure(indexed, files[i]));
+        }
+    }
+
+    @Test
+    public void parallelExtraction() throws IOException {
+        final int size = 4 * SIZE;
+        File file = write("parallel", content(size), 4 * BLOCK_SIZE);
+        int processors = Runtime.getRuntime().availableProcessors();
+        StringBuilder report = new StringBuilder("Parallel extraction of " + size + " bytes on " + processors + " cores:");
+        for (int threads = 1; threads <= Math.max(processors, 4); threads *= 2) {
+            final int parallelism = threads;
+            final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                Extraction extraction = new Extraction() {
+                    @Override
+                    public int run(File file) throws IOException {
+                        return Decompressor.extractXzParallel(file, size, executor, parallelism).length;
+                    }
+                };
+                assertEquals(size, extraction.run(file));
+                report.append(" ").append(parallelism).append(" threads ").append(measure(extraction, file)).append(";");
+            } finally {
+                executor.shutdown();
+            }
+        }
+        Log.i(TAG, report.toString());
+    }
+}
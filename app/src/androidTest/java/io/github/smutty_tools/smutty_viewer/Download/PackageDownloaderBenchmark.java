@@ -0,0 +1,90 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares copying a 32 MB package then hashing it back from storage with hashing it
+ * while it is written, on the storage of the device.
+ *
+ * The package is read from a local file url, so that the network does not hide the
+ * storage i/o being measured.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackageDownloaderBenchmark {
+
+    private static final String TAG = "DownloaderBenchmark";
+    private static final int SIZE = 32 * 1024 * 1024;
+    private static final int ROUNDS = 3;
+
+    private File directory;
+    private URL source;
+    private String md5;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "downloader_benchmark");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        byte[] content = new byte[SIZE];
+        new Random(2).nextBytes(content);
+        md5 = Utils.ToHexString(MessageDigest.getInstance(Utils.HASH_MD5).digest(content));
+        File sourceFile = new File(directory, "source");
+        FileOutputStream outputStream = new FileOutputStream(sourceFile);
+        outputStream.write(content);
+        outputStream.close();
+        source = sourceFile.toURI().toURL();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void inlineDigest() throws Exception {
+        long twoPassMillis = 0;
+        long inlineMillis = 0;
+        PackageDownloader downloader = new PackageDownloader(1);
+        for (int round = 0; round < ROUNDS; round++) {
+            // previous path: copy to storage, then read everything back to hash it
+            File copied = new File(directory, "copied");
+            long start = System.currentTimeMillis();
+            Utils.DownloadUrlToFile(source, copied);
+            assertEquals(md5, Utils.FileMd5(copied));
+            twoPassMillis += System.currentTimeMillis() - start;
+            copied.delete();
+
+            File target = new File(directory, md5);
+            start = System.currentTimeMillis();
+            downloader.download(source, target, md5);
+            inlineMillis += System.currentTimeMillis() - start;
+            assertEquals(SIZE, target.length());
+            target.delete();
+        }
+        Log.i(TAG, "Download of " + SIZE + " bytes: two passes " + twoPassMillis / ROUNDS + " ms, inline digest "
+                + inlineMillis / ROUNDS + " ms per round");
+        assertEquals(0, downloader.getBytesReread());
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import io.github.smutty_tools.smutty_viewer.Decompress.Decompressor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares cached and repeated decoding when scrolling back and forth over 8 packages of 1 MB.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DecodedPackageCacheBenchmark {
+
+    private static final String TAG = "DecodedCacheBenchmark";
+    private static final int PACKAGE_SIZE = 1024 * 1024;
+    private static final int PACKAGES = 8;
+    private static final int ROUNDS = 50;
+
+    private File base;
+    private PackageStore store;
+
+    private static String md5(int i) {
+        return String.format(Locale.ROOT, "%032x", i + 1);
+    }
+
+    private static byte[] content(int i) {
+        byte[] data = new byte[PACKAGE_SIZE];
+        Random random = new Random(i);
+        for (int offset = 0; offset < data.length; offset += 64) {
+            Arrays.fill(data, offset, offset + 64, (byte) random.nextInt(16));
+        }
+        return data;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        base = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "decoded_cache_benchmark");
+        delete(base);
+        store = new PackageStore(new File(base, "store"), PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        for (int i = 0; i < PACKAGES; i++) {
+            XZOutputStream xzOut = new XZOutputStream(new FileOutputStream(store.prepareFile(md5(i))), new LZMA2Options(1));
+            xzOut.write(content(i));
+            xzOut.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(base);
+    }
+
+    @Test
+    public void backAndForth() throws IOException {
+        DecodedPackageCache cache = new DecodedPackageCache(store, PACKAGE_SIZE, 2 * PACKAGE_SIZE,
+                new File(base, "decoded"), PACKAGES * PACKAGE_SIZE);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(PACKAGE_SIZE, cache.get(md5(i % PACKAGES)).length);
+        }
+        long cachedNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            Decompressor.extractXz(store.getFile(md5(i % PACKAGES)), PACKAGE_SIZE);
+        }
+        long decodedNanos = System.nanoTime() - start;
+        Log.i(TAG, String.format(Locale.ROOT, "Cycling over %d packages of %d bytes: cached %.2f ms, decoded %.2f ms per access (%s)",
+                PACKAGES, PACKAGE_SIZE, cachedNanos / 1e6 / ROUNDS, decodedNanos / 1e6 / ROUNDS, cache));
+    }
+}
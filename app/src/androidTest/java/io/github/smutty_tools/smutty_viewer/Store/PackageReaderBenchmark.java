@@ -0,0 +1,130 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares random item reads in 16 MB of content through a file, a pooled mapping,
+ * and the blocks of an xz file.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackageReaderBenchmark {
+
+    private static final String TAG = "PackageReaderBenchmark";
+    private static final int SIZE = 16 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int ITEM_SIZE = 4096;
+    private static final int READS = 20000;
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "package_reader_benchmark");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(1);
+        for (int i = 0; i < size; i += 64) {
+            Arrays.fill(data, i, Math.min(size, i + 64), (byte) random.nextInt(16));
+        }
+        return data;
+    }
+
+    private File writePlain(byte[] data) throws IOException {
+        File file = new File(directory, "plain");
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(data);
+        outputStream.close();
+        return file;
+    }
+
+    private File writeXz(byte[] data) throws IOException {
+        File file = new File(directory, "compressed");
+        XZOutputStream xzOut = new XZOutputStream(new FileOutputStream(file), new LZMA2Options(1));
+        for (int offset = 0; offset < data.length; offset += BLOCK_SIZE) {
+            xzOut.write(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+            xzOut.endBlock();
+        }
+        xzOut.close();
+        return file;
+    }
+
+    @Test
+    public void randomAccess() throws IOException {
+        byte[] data = content(SIZE);
+        File plain = writePlain(data);
+        File compressed = writeXz(data);
+        int[] offsets = new int[READS];
+        Random random = new Random(3);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = random.nextInt(data.length - ITEM_SIZE);
+        }
+        byte[] bytes = new byte[ITEM_SIZE];
+
+        long start = System.nanoTime();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(plain, "r");
+        for (int offset : offsets) {
+            randomAccessFile.seek(offset);
+            randomAccessFile.readFully(bytes);
+        }
+        randomAccessFile.close();
+        long fileNanos = System.nanoTime() - start;
+
+        MappedFilePool pool = new MappedFilePool(2);
+        start = System.nanoTime();
+        PackageReader reader = new PackageReader(pool, plain);
+        long checksum = 0;
+        for (int offset : offsets) {
+            checksum += reader.slice(offset, ITEM_SIZE).get(ITEM_SIZE - 1);
+        }
+        reader.close();
+        long mappedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        reader = new PackageReader(pool, compressed);
+        int compressedReads = READS / 100;
+        for (int i = 0; i < compressedReads; i++) {
+            reader.read(offsets[i], bytes, 0, ITEM_SIZE);
+        }
+        reader.close();
+        long xzNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format(Locale.ROOT,
+                "Random %d byte reads in %d bytes: file %.1f us, mapped %.1f us, xz blocks %.1f us per read (checksum %d)",
+                ITEM_SIZE, data.length, fileNanos / 1000.0 / READS, mappedNanos / 1000.0 / READS,
+                xzNanos / 1000.0 / compressedReads, checksum));
+        assertArrayEquals(Arrays.copyOfRange(data, offsets[compressedReads - 1], offsets[compressedReads - 1] + ITEM_SIZE), bytes);
+    }
+}
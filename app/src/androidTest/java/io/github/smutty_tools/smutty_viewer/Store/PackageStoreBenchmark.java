@@ -0,0 +1,74 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times the migration of a flat store of 20k files into shards, and the listing of the sharded store.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackageStoreBenchmark {
+
+    private static final String TAG = "PackageStoreBenchmark";
+    private static final int FILES = 20000;
+
+    private File base;
+
+    private static String md5(int i) {
+        return String.format(Locale.ROOT, "%08x%024x", i * 2654435761L & 0xffffffffL, i);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        base = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "package_store_benchmark");
+        delete(base);
+        assertTrue(base.mkdirs());
+        for (int i = 0; i < FILES; i++) {
+            assertTrue(new File(base, md5(i)).createNewFile());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(base);
+    }
+
+    @Test
+    public void migrationAndListing() throws Exception {
+        PackageStore store = new PackageStore(base, PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        long start = System.currentTimeMillis();
+        assertEquals(FILES, store.migrate());
+        long migrationMillis = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        int listed = 0;
+        for (File file : store) {
+            listed++;
+        }
+        long listingMillis = System.currentTimeMillis() - start;
+
+        Log.i(TAG, "Store of " + FILES + " files: migration " + migrationMillis + " ms, listing " + listingMillis + " ms");
+        assertEquals(FILES, listed);
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.smutty_tools.smutty_viewer.Activities;
+
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.KeyEvent;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.github.smutty_tools.smutty_viewer.Data.AppDatabase;
+import io.github.smutty_tools.smutty_viewer.Data.ContentItem;
+import io.github.smutty_tools.smutty_viewer.Data.ContentPager;
+import io.github.smutty_tools.smutty_viewer.Data.PackageCacheManager;
+import io.github.smutty_tools.smutty_viewer.Data.PackageSearch;
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackage;
+import io.github.smutty_tools.smutty_viewer.Download.PrefetchScheduler;
+import io.github.smutty_tools.smutty_viewer.Download.StorePrefetchSource;
+import io.github.smutty_tools.smutty_viewer.Images.BitmapPool;
+import io.github.smutty_tools.smutty_viewer.Images.ImageDecoder;
+import io.github.smutty_tools.smutty_viewer.R;
+import io.github.smutty_tools.smutty_viewer.Store.DecodedPackageCache;
+import io.github.smutty_tools.smutty_viewer.Store.MappedFilePool;
+import io.github.smutty_tools.smutty_viewer.Store.PackageStore;
+
+/**
+ * Browses the items of the packages in the store, in search order.
+ *
+ * Items are loaded page by page in the background; the packages following the
+ * viewed item are prefetched.
+ */
+public class BrowseActivity extends AppCompatActivity implements ContentPager.Listener {
+
+    private static final String TAG = "BrowseActivity";
+
+    /**
+     * Items of the packages found by the current search, decoded through the package cache.
+     */
+    private static class StoreContentSource implements ContentPager.Source {
+        private final PackageSearch packageSearch;
+        private final PackageStore packageStore;
+        private final DecodedPackageCache decodedCache;
+        private volatile PackageSearch.Filter filter;
+
+        StoreContentSource(PackageSearch packageSearch, PackageStore packageStore, DecodedPackageCache decodedCache) {
+            this.packageSearch = packageSearch;
+            this.packageStore = packageStore;
+            this.decodedCache = decodedCache;
+            this.filter = new PackageSearch.Filter();
+        }
+
+        @Override
+        public List<SmuttyPackage> packagesAfter(SmuttyPackage after, int limit) {
+            return packageSearch.page(filter, after, limit);
+        }
+
+        @Override
+        public List<ContentItem> items(SmuttyPackage pkg) throws IOException {
+            if (!packageStore.getFile(pkg.getMd5()).exists()) {
+                // not fetched yet, or evicted
+                return new ArrayList<>();
+            }
+            // closed by readItems
+            return ContentItem.readItems(decodedCache.open(pkg.getMd5()));
+        }
+    }
+
+    private ExecutorService backgroundExecutor = null;
+    private ExecutorService extractionExecutor = null;
+    private ImageDecoder imageDecoder = null;
+    private PrefetchScheduler prefetchScheduler = null;
+    private PackageCacheManager cacheManager = null;
+    private StoreContentSource contentSource = null;
+    private ContentPager pager = null;
+    private ContentAdapter adapter = null;
+    private LinearLayoutManager layoutManager = null;
+    private String viewedMd5 = null;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_browse);
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(this);
+        AppDatabase appDatabase = AppDatabase.getInstance(this);
+        File storageDirectory = new File(Environment.getExternalStorageDirectory(), MainActivity.DIRECTORY_MAIN);
+        PackageStore packageStore = new PackageStore(new File(storageDirectory, MainActivity.SUB_DIRECTORY_INDEX), PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        cacheManager = new PackageCacheManager(appDatabase, packageStore, PackageCacheManager.parseQuota(settings.getString("storage_mbytes", null)));
+        prefetchScheduler = new PrefetchScheduler(new StorePrefetchSource(appDatabase, packageStore, cacheManager),
+                PrefetchScheduler.parseBudget(settings.getString("prefetch_mbytes", null)));
+        // the blocks of a package being decoded use every core
+        int extractionParallelism = Runtime.getRuntime().availableProcessors();
+        extractionExecutor = Executors.newFixedThreadPool(extractionParallelism);
+        // decoded packages and thumbnail atlases are both read through the same mappings
+        MappedFilePool mappedFilePool = new MappedFilePool(MappedFilePool.DEFAULT_MAX_MAPPINGS);
+        DecodedPackageCache decodedCache;
+        try {
+            decodedCache = new DecodedPackageCache(packageStore, DecodedPackageCache.defaultMaxPackageSize(), DecodedPackageCache.defaultMemoryBudget(),
+                    new File(storageDirectory, MainActivity.SUB_DIRECTORY_DECODED), DecodedPackageCache.DEFAULT_DISK_BUDGET_BYTES,
+                    extractionExecutor, extractionParallelism, mappedFilePool);
+        } catch (IOException e) {
+            Log.w(TAG, "Decoded packages kept in memory only: " + e.getMessage());
+            try {
+                decodedCache = new DecodedPackageCache(packageStore, DecodedPackageCache.defaultMaxPackageSize(), DecodedPackageCache.defaultMemoryBudget(), null, 0,
+                        extractionExecutor, extractionParallelism, null);
+            } catch (IOException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+        contentSource = new StoreContentSource(new PackageSearch(appDatabase), packageStore, decodedCache);
+
+        // pages are loaded one at a time, results are handled on the main thread
+        backgroundExecutor = Executors.newSingleThreadExecutor();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        };
+        pager = new ContentPager(contentSource, backgroundExecutor, mainExecutor, this, ContentPager.DEFAULT_MAX_PAGES);
+        // decoded images and the bitmaps kept for reuse each take at most an eighth of the heap
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        imageDecoder = new ImageDecoder(ImageDecoder.DEFAULT_WORKERS, new BitmapPool(maxMemory / 8), maxMemory / 8);
+        // thumbnails generated while syncing are read from their atlas, one mapping per package
+        adapter = new ContentAdapter(pager, settings.getBoolean("show_tags", true), imageDecoder,
+                getResources().getDimensionPixelSize(R.dimen.item_image_size), packageStore, mappedFilePool);
+        layoutManager = new LinearLayoutManager(this);
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.recyclerViewContent);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                onViewed(layoutManager.findFirstVisibleItemPosition());
+            }
+        });
+
+        EditText searchText = (EditText) findViewById(R.id.editTextSearch);
+        searchText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView view, int actionId, KeyEvent event) {
+                if (actionId != EditorInfo.IME_ACTION_SEARCH) {
+                    return false;
+                }
+                search(view.getText().toString());
+                return true;
+            }
+        });
+        pager.discover();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // drops the results of pending loads
+        pager.reset();
+        backgroundExecutor.shutdownNow();
+        extractionExecutor.shutdownNow();
+        imageDecoder.shutdown();
+        prefetchScheduler.shutdown();
+        super.onDestroy();
+    }
+
+    private void search(String text) {
+        contentSource.filter = new PackageSearch.Filter().text(text);
+        pager.reset();
+        viewedMd5 = null;
+        adapter.notifyDataSetChanged();
+        pager.discover();
+    }
+
+    /**
+     * Prefetches from the viewed item, and records the access to its package for the storage quota.
+     */
+    private void onViewed(int position) {
+        if (position < 0 || position >= pager.size()) {
+            return;
+        }
+        final SmuttyPackage pkg = pager.getPackage(position);
+        ContentItem item = pager.get(position);
+        prefetchScheduler.onPosition(pkg.getContentType(), item != null ? item.getId() : pkg.getMinId());
+        if (pkg.getMd5().equals(viewedMd5)) {
+            return;
+        }
+        viewedMd5 = pkg.getMd5();
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                cacheManager.markAccessed(pkg.getMd5());
+            }
+        });
+    }
+
+    @Override
+    public void onItemsInserted(int position, int count) {
+        adapter.notifyItemRangeInserted(position, count);
+        if (position == 0) {
+            onViewed(0);
+        }
+    }
+
+    @Override
+    public void onItemsLoaded(int position, int count) {
+        adapter.notifyItemRangeChanged(position, count);
+    }
+
+    @Override
+    public void onLoadFailed(SmuttyPackage pkg, IOException e) {
+        Log.w(TAG, "Could not read items of " + pkg.getPackageFile() + ": " + e.getMessage());
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.smutty_tools.smutty_viewer.Activities;
+
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import io.github.smutty_tools.smutty_viewer.Data.ContentItem;
+import io.github.smutty_tools.smutty_viewer.Data.ContentPager;
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackage;
+import io.github.smutty_tools.smutty_viewer.Images.ImageDecoder;
+import io.github.smutty_tools.smutty_viewer.Images.ThumbnailSource;
+import io.github.smutty_tools.smutty_viewer.R;
+import io.github.smutty_tools.smutty_viewer.Store.MappedFilePool;
+import io.github.smutty_tools.smutty_viewer.Store.PackageStore;
+
+/**
+ * Recycled views over the items of a {@link ContentPager}, items being bound once their page is loaded.
+ */
+public class ContentAdapter extends RecyclerView.Adapter<ContentAdapter.ViewHolder> {
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        final ImageView image;
+        final TextView title;
+        final TextView tags;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            image = (ImageView) itemView.findViewById(R.id.imageViewItem);
+            title = (TextView) itemView.findViewById(R.id.textViewItemTitle);
+            tags = (TextView) itemView.findViewById(R.id.textViewItemTags);
+        }
+    }
+
+    private final ContentPager pager;
+    private final boolean showTags;
+    private final ImageDecoder imageDecoder;
+    private final int imageSize;
+    private final PackageStore packageStore;
+    private final MappedFilePool atlasPool;
+
+    /**
+     * @param imageSize size in pixels images are downsampled to
+     * @param atlasPool mappings of the thumbnail atlases of the packages
+     */
+    public ContentAdapter(ContentPager pager, boolean showTags, ImageDecoder imageDecoder, int imageSize,
+                          PackageStore packageStore, MappedFilePool atlasPool) {
+        this.pager = pager;
+        this.showTags = showTags;
+        this.imageDecoder = imageDecoder;
+        this.imageSize = imageSize;
+        this.packageStore = packageStore;
+        this.atlasPool = atlasPool;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_content, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        ContentItem item = pager.get(position);
+        if (item == null) {
+            // bound again once its page is loaded
+            imageDecoder.cancel(holder.image);
+            holder.image.setVisibility(View.GONE);
+            holder.title.setText(R.string.browse_loading);
+            holder.tags.setVisibility(View.GONE);
+            return;
+        }
+        SmuttyPackage pkg = pager.getPackage(position);
+        if (item.getUrl() != null && SmuttyPackage.CONTENT_TYPE_IMAGE.equals(pkg.getContentType())) {
+            holder.image.setVisibility(View.VISIBLE);
+            imageDecoder.load(holder.image, new ThumbnailSource(atlasPool, packageStore.getThumbnailFile(pkg.getMd5()), item.getId(), item.getUrl()),
+                    imageSize, imageSize);
+        } else {
+            imageDecoder.cancel(holder.image);
+            holder.image.setVisibility(View.GONE);
+        }
+        holder.title.setText(item.getUrl() != null ? item.getId() + " " + item.getUrl() : String.valueOf(item.getId()));
+        if (showTags && item.getTags().length > 0) {
+            holder.tags.setText(TextUtils.join(" ", item.getTags()));
+            holder.tags.setVisibility(View.VISIBLE);
+        } else {
+            holder.tags.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        // scrolled off screen
+        imageDecoder.cancel(holder.image);
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager.size();
+    }
+}
@@ -1,14 +1,16 @@
 package io.github.smutty_tools.smutty_viewer.Activities;
 
 
-import android.arch.persistence.room.Room;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.IBinder;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
@@ -21,20 +23,22 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.File;
 import java.security.InvalidParameterException;
 import java.text.DateFormat;
 import java.util.Date;
 
-import io.github.smutty_tools.smutty_viewer.AsyncTasks.RefreshIndexTask;
-import io.github.smutty_tools.smutty_viewer.Data.AppDatabase;
 import io.github.smutty_tools.smutty_viewer.R;
+import io.github.smutty_tools.smutty_viewer.Services.SyncScheduler;
+import io.github.smutty_tools.smutty_viewer.Services.SyncService;
+import io.github.smutty_tools.smutty_viewer.Services.SyncTask;
+import io.github.smutty_tools.smutty_viewer.Tools.LogEntry;
+import io.github.smutty_tools.smutty_viewer.Tools.LogProgressBundle;
 import io.github.smutty_tools.smutty_viewer.Tools.Logger;
 
 /**
  * Main activity class
  */
-public class MainActivity extends AppCompatActivity implements Logger, RefreshIndexTask.FinishedNotifier {
+public class MainActivity extends AppCompatActivity implements Logger, SyncService.Client {
 
     public static class WidgetCache {
         public final ProgressBar progressBar;
@@ -47,8 +51,9 @@ public class MainActivity extends AppCompatActivity implements Logger, RefreshIn
     }
 
     private static final String TAG = "MainActivity";
-    private static final String DIRECTORY_MAIN = "smutty-viewer";
-    private static final String SUB_DIRECTORY_INDEX = "indexes";
+    public static final String DIRECTORY_MAIN = "smutty-viewer";
+    public static final String SUB_DIRECTORY_INDEX = "indexes";
+    public static final String SUB_DIRECTORY_DECODED = "decoded";
     private static final String[] LEVELS = {
             "CRITICAL",
             "ERROR",
@@ -58,48 +63,77 @@ public class MainActivity extends AppCompatActivity implements Logger, RefreshIn
     };
 
     private SharedPreferences settings = null;
-    private AppDatabase appDatabase = null;
-    private RefreshIndexTask refreshIndexTask = null;
-    private File storageDirectory = null;
+    private SyncService syncService = null;
     private WidgetCache widgetCache = null;
 
+    private final ServiceConnection syncConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            syncService = ((SyncService.LocalBinder) binder).getService();
+            // the log of the running or last sync is replayed
+            widgetCache.textView.setText("");
+            widgetCache.progressBar.setVisibility(syncService.isRunning() ? View.VISIBLE : View.GONE);
+            syncService.setClient(MainActivity.this);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            syncService = null;
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        appDatabase = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, "smutty_viewer").build();
         settings = PreferenceManager.getDefaultSharedPreferences(this);
-        storageDirectory = new File(Environment.getExternalStorageDirectory(), DIRECTORY_MAIN);
         widgetCache = new WidgetCache(this);
+        SyncScheduler.ensureScheduled(this);
     }
 
     @Override
-    protected void onDestroy() {
-        // cancel AsyncTasks
-        if (refreshIndexTask != null) {
-            info("Canceling refresh index task");
-            refreshIndexTask.cancel(true);
-            refreshIndexTask = null;
+    protected void onStart() {
+        super.onStart();
+        // syncs run in the service, whatever happens to the activity
+        bindService(new Intent(this, SyncService.class), syncConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        if (syncService != null) {
+            syncService.setClient(null);
+            syncService = null;
         }
-        super.onDestroy();
+        unbindService(syncConnection);
+        super.onStop();
     }
 
-    private void startRefreshAsyncTask(String indexUrl) {
+    private void startSyncService() {
         // skip if already running
-        if (refreshIndexTask != null) {
+        if (syncService != null && syncService.isRunning()) {
             displayToast("Sync index already running");
             return;
         }
-        refreshIndexTask = new RefreshIndexTask(this, widgetCache.progressBar, this, appDatabase, new File(storageDirectory, SUB_DIRECTORY_INDEX));
-        refreshIndexTask.execute(indexUrl);
+        startService(new Intent(this, SyncService.class).setAction(SyncService.ACTION_SYNC));
     }
 
     @Override
-    public void taskFinished(RefreshIndexTask task) {
-        if (refreshIndexTask != null && !refreshIndexTask.equals(task)) {
-            warning("Task finished", task, "different from task lanched", refreshIndexTask);
+    public void onSyncProgress(LogProgressBundle bundle) {
+        LogEntry entry = bundle.logEntry;
+        if (entry != null) {
+            log(entry.level, entry.message);
+        }
+        // messages of the service itself carry no progress
+        if (bundle.maxProgress > 0) {
+            widgetCache.progressBar.setVisibility(View.VISIBLE);
+            widgetCache.progressBar.setProgress(bundle.progress);
+            widgetCache.progressBar.setMax(bundle.maxProgress);
         }
-        refreshIndexTask = null;
+    }
+
+    @Override
+    public void onSyncFinished(SyncTask task) {
+        widgetCache.progressBar.setVisibility(View.GONE);
     }
 
     @Override
@@ -114,6 +148,9 @@ public class MainActivity extends AppCompatActivity implements Logger, RefreshIn
         switch (item.getItemId()) {
             case R.id.action_share:
                 return true; // consume the event
+            case R.id.action_browse:
+                startActivity(new Intent(this, BrowseActivity.class));
+                return true; // consume the event
             case R.id.action_refresh:
                 refreshAction();
                 return true; // consume the event
@@ -147,9 +184,9 @@ public class MainActivity extends AppCompatActivity implements Logger, RefreshIn
             displayToast("Synchronization allowed only on wifi");
             return;
         }
-        // download index file
-        String indexUrl = settings.getString("sync_url", null);
-        if (indexUrl == null || indexUrl.length() == 0) {
+        // download index files, several urls are separated by whitespace
+        String[] indexUrls = SyncService.parseIndexUrls(settings.getString("sync_url", null));
+        if (indexUrls.length == 0) {
             displayToast("Sync URL not provided");
             return;
         }
@@ -159,7 +196,7 @@ public class MainActivity extends AppCompatActivity implements Logger, RefreshIn
             return;
         }
         // setup task
-        startRefreshAsyncTask(indexUrl);
+        startSyncService();
     }
 
     public void displayToast(String message) {
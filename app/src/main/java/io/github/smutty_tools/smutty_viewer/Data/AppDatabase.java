@@ -1,9 +1,158 @@
 package io.github.smutty_tools.smutty_viewer.Data;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
+import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.migration.Migration;
+import android.content.Context;
+import android.os.Build;
 
-@Database(entities = {SmuttyPackage.class}, version = 1)
+@Database(entities = {SmuttyPackage.class, VerifiedFile.class, IndexSource.class, PackageUsage.class, TagPosting.class, IndexedPackage.class}, version = 10)
 public abstract class AppDatabase extends RoomDatabase {
     public abstract SmuttyPackageDao smuttyPackageDao();
+    public abstract VerifiedFileDao verifiedFileDao();
+    public abstract IndexSourceDao indexSourceDao();
+    public abstract PackageUsageDao packageUsageDao();
+    public abstract TagPostingDao tagPostingDao();
+
+    private static final String DATABASE_NAME = "smutty_viewer";
+
+    private static AppDatabase instance = null;
+
+    /**
+     * Database shared by every activity of the application.
+     */
+    public static synchronized AppDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
+                    .addMigrations(MIGRATIONS)
+                    .addCallback(CALLBACK)
+                    .build();
+        }
+        return instance;
+    }
+
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `verified_files` (`md5` TEXT NOT NULL, `file_size` INTEGER NOT NULL, `last_modified` INTEGER NOT NULL, PRIMARY KEY(`md5`))");
+        }
+    };
+
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `index_sources` (`url` TEXT NOT NULL, `etag` TEXT, `last_modified` TEXT, `latency_millis` INTEGER NOT NULL, `last_sync` INTEGER NOT NULL, `package_count` INTEGER NOT NULL, PRIMARY KEY(`url`))");
+        }
+    };
+
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `package_usage` (`md5` TEXT NOT NULL, `file_size` INTEGER NOT NULL, `last_access` INTEGER NOT NULL, `evicted` INTEGER NOT NULL, PRIMARY KEY(`md5`))");
+        }
+    };
+
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE  INDEX `index_packages_content_type_min_id_max_id` ON `packages` (`content_type`, `min_id`, `max_id`)");
+        }
+    };
+
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `tag_postings` (`tag` TEXT NOT NULL, `md5` TEXT NOT NULL, `content_type` TEXT, `ids` BLOB, PRIMARY KEY(`tag`, `md5`))");
+            database.execSQL("CREATE  INDEX `index_tag_postings_md5` ON `tag_postings` (`md5`)");
+        }
+    };
+
+    /**
+     * Tokenizer case folding letters of every script, so that names match queries lowercased
+     * with {@link java.util.Locale#ROOT}. It is only built in from Android 5.0: before, the
+     * simple tokenizer folds ASCII letters only, and names with other uppercase letters are
+     * found by their ASCII words alone.
+     */
+    static final String SEARCH_TOKENIZER = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? ", tokenize=unicode61" : "";
+
+    /**
+     * Full text index over package names, with its content read from the packages table.
+     * Room does not manage virtual tables: triggers keep it in sync with the packages.
+     */
+    static final String[] SEARCH_SCHEMA = {
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `packages_fts` USING fts4(content=`packages`, `file_name`, `content_type`" + SEARCH_TOKENIZER + ")",
+            "CREATE TRIGGER IF NOT EXISTS `packages_fts_before_delete` BEFORE DELETE ON `packages` BEGIN DELETE FROM `packages_fts` WHERE docid = old.rowid; END",
+            "CREATE TRIGGER IF NOT EXISTS `packages_fts_before_update` BEFORE UPDATE ON `packages` BEGIN DELETE FROM `packages_fts` WHERE docid = old.rowid; END",
+            "CREATE TRIGGER IF NOT EXISTS `packages_fts_after_update` AFTER UPDATE ON `packages` BEGIN INSERT INTO `packages_fts` (docid, `file_name`, `content_type`) VALUES (new.rowid, new.`file_name`, new.`content_type`); END",
+            "CREATE TRIGGER IF NOT EXISTS `packages_fts_after_insert` AFTER INSERT ON `packages` BEGIN INSERT INTO `packages_fts` (docid, `file_name`, `content_type`) VALUES (new.rowid, new.`file_name`, new.`content_type`); END",
+    };
+
+    private static void createSearchSchema(SupportSQLiteDatabase database) {
+        for (String sql : SEARCH_SCHEMA) {
+            database.execSQL(sql);
+        }
+    }
+
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            createSearchSchema(database);
+            database.execSQL("INSERT INTO `packages_fts` (docid, `file_name`, `content_type`) SELECT rowid, `file_name`, `content_type` FROM `packages`");
+        }
+    };
+
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `index_sources` ADD COLUMN `checkpoint_etag` TEXT");
+            database.execSQL("ALTER TABLE `index_sources` ADD COLUMN `checkpoint_last_modified` TEXT");
+            database.execSQL("ALTER TABLE `index_sources` ADD COLUMN `checkpoint_position` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `indexed_packages` (`md5` TEXT NOT NULL, `tag_count` INTEGER NOT NULL, `failed` INTEGER NOT NULL, PRIMARY KEY(`md5`))");
+            // packages indexed so far are those with postings
+            database.execSQL("INSERT INTO `indexed_packages` (`md5`, `tag_count`, `failed`) SELECT `md5`, COUNT(*), 0 FROM `tag_postings` GROUP BY `md5`");
+        }
+    };
+
+    public static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            // recreated with the tokenizer folding every script, the triggers refer to it by name
+            database.execSQL("DROP TABLE IF EXISTS `packages_fts`");
+            createSearchSchema(database);
+            database.execSQL("INSERT INTO `packages_fts` (docid, `file_name`, `content_type`) SELECT rowid, `file_name`, `content_type` FROM `packages`");
+        }
+    };
+
+    public static final Callback CALLBACK = new Callback() {
+        @Override
+        public void onCreate(SupportSQLiteDatabase database) {
+            createSearchSchema(database);
+        }
+
+        @Override
+        public void onOpen(SupportSQLiteDatabase database) {
+            // rows replaced by an insert fire the delete trigger only when recursive triggers are enabled
+            database.execSQL("PRAGMA recursive_triggers = ON");
+        }
+    };
+
+    public static final Migration[] MIGRATIONS = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+    };
 }
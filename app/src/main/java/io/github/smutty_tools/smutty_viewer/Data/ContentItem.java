@@ -0,0 +1,90 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Item of a package, read from the json array of the package content (see {@link TagIndex}).
+ */
+public class ContentItem {
+
+    private static final String[] NO_TAGS = new String[0];
+
+    private final int id;
+    private final String[] tags;
+    private final String url;
+
+    public ContentItem(int id, String[] tags, String url) {
+        this.id = id;
+        this.tags = tags;
+        this.url = url;
+    }
+
+    public static List<ContentItem> readItems(InputStream inputStream) throws IOException {
+        List<ContentItem> items = new ArrayList<>();
+        JsonReader jsonReader = new JsonReader(new BufferedReader(new InputStreamReader(inputStream, Utils.CHARSET_UTF8)));
+        try {
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                items.add(readItem(jsonReader));
+            }
+            jsonReader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Unexpected package content at " + jsonReader.getPath() + ": " + e.getMessage());
+        } finally {
+            jsonReader.close();
+        }
+        return items;
+    }
+
+    private static ContentItem readItem(JsonReader jsonReader) throws IOException {
+        Integer id = null;
+        String[] tags = NO_TAGS;
+        String url = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if ("id".equals(name)) {
+                id = jsonReader.nextInt();
+            } else if ("tags".equals(name) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                List<String> values = new ArrayList<>();
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    values.add(jsonReader.nextString());
+                }
+                jsonReader.endArray();
+                tags = values.toArray(new String[values.size()]);
+            } else if ("url".equals(name) && jsonReader.peek() == JsonToken.STRING) {
+                url = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        if (id == null) {
+            throw new IOException("Item without id at " + jsonReader.getPath());
+        }
+        return new ContentItem(id, tags, url);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String[] getTags() {
+        return tags;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+}
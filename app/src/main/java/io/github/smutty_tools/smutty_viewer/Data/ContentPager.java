@@ -0,0 +1,292 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Items of a sequence of packages, seen as one list loaded in fixed size pages.
+ *
+ * Packages are discovered a few at a time as the end of the list is approached, which gives
+ * every item a stable position. Only the {@code maxPages} most recently used pages of items
+ * are held, the others being loaded again in the background when needed.
+ *
+ * Every method must be called from the delivery executor, usually the main thread.
+ */
+public class ContentPager {
+
+    public static final int PAGE_SIZE = 64;
+    public static final int DEFAULT_MAX_PAGES = 8;
+    private static final int PACKAGES_PER_DISCOVERY = 4;
+
+    public interface Source {
+        /**
+         * @param after last package discovered, null for the first packages
+         */
+        List<SmuttyPackage> packagesAfter(SmuttyPackage after, int limit);
+
+        List<ContentItem> items(SmuttyPackage pkg) throws IOException;
+    }
+
+    public interface Listener {
+        void onItemsInserted(int position, int count);
+
+        void onItemsLoaded(int position, int count);
+
+        void onLoadFailed(SmuttyPackage pkg, IOException e);
+    }
+
+    private final Source source;
+    private final Executor background;
+    private final Executor delivery;
+    private final Listener listener;
+    private final int maxPages;
+
+    private final List<SmuttyPackage> packages;
+    // position of the first item of each package
+    private int[] firstPositions;
+    private int size;
+    private boolean discovering;
+    private boolean exhausted;
+    private final LinkedHashMap<Integer, ContentItem[]> pages;
+    private final Set<Integer> pendingPages;
+    // results of tasks started before a reset are dropped
+    private int generation;
+
+    public ContentPager(Source source, Executor background, Executor delivery, Listener listener, int maxPages) {
+        this.source = source;
+        this.background = background;
+        this.delivery = delivery;
+        this.listener = listener;
+        this.maxPages = maxPages;
+        this.packages = new ArrayList<>();
+        this.firstPositions = new int[64];
+        this.size = 0;
+        this.discovering = false;
+        this.exhausted = false;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+        this.pendingPages = new HashSet<>();
+        this.generation = 0;
+    }
+
+    /**
+     * Number of items of the packages discovered so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public int getLoadedPages() {
+        return pages.size();
+    }
+
+    /**
+     * Forgets every package, for instance when the search changed.
+     */
+    public void reset() {
+        generation++;
+        packages.clear();
+        size = 0;
+        discovering = false;
+        exhausted = false;
+        pages.clear();
+        pendingPages.clear();
+    }
+
+    /**
+     * @return the item, or null when its page is being loaded
+     */
+    public ContentItem get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " outside of " + size + " items");
+        }
+        if (position >= size - PAGE_SIZE) {
+            discover();
+        }
+        int page = position / PAGE_SIZE;
+        ContentItem[] items = pages.get(page);
+        ContentItem item = items == null ? null : items[position % PAGE_SIZE];
+        if (item == null) {
+            loadPage(page);
+        }
+        return item;
+    }
+
+    /**
+     * @return index of the package holding the item at this position
+     */
+    private int packageIndex(int position) {
+        int index = Arrays.binarySearch(firstPositions, 0, packages.size(), position);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        // skip packages without items sharing the same first position
+        while (index + 1 < packages.size() && firstPositions[index + 1] == position) {
+            index++;
+        }
+        return index;
+    }
+
+    public SmuttyPackage getPackage(int position) {
+        return packages.get(packageIndex(position));
+    }
+
+    /**
+     * Loads the first packages, or the next ones once the end is near.
+     */
+    public void discover() {
+        if (discovering || exhausted) {
+            return;
+        }
+        discovering = true;
+        final int taskGeneration = generation;
+        final SmuttyPackage after = packages.isEmpty() ? null : packages.get(packages.size() - 1);
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<SmuttyPackage> found = source.packagesAfter(after, PACKAGES_PER_DISCOVERY);
+                final List<List<ContentItem>> foundItems = new ArrayList<>(found.size());
+                for (final SmuttyPackage pkg : found) {
+                    List<ContentItem> items;
+                    try {
+                        items = source.items(pkg);
+                    } catch (final IOException e) {
+                        // the package is listed without items
+                        items = new ArrayList<>();
+                        deliverFailure(taskGeneration, pkg, e);
+                    }
+                    foundItems.add(items);
+                }
+                delivery.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (taskGeneration == generation) {
+                            onDiscovered(found, foundItems);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void onDiscovered(List<SmuttyPackage> found, List<List<ContentItem>> foundItems) {
+        discovering = false;
+        exhausted = found.size() < PACKAGES_PER_DISCOVERY;
+        int start = size;
+        for (int i = 0; i < found.size(); i++) {
+            if (packages.size() == firstPositions.length) {
+                firstPositions = Arrays.copyOf(firstPositions, firstPositions.length << 1);
+            }
+            firstPositions[packages.size()] = size;
+            packages.add(found.get(i));
+            List<ContentItem> items = foundItems.get(i);
+            for (int j = 0; j < items.size(); j++) {
+                store(size + j, items.get(j));
+            }
+            size += items.size();
+        }
+        trimPages();
+        if (size > start) {
+            listener.onItemsInserted(start, size - start);
+        } else {
+            // nothing to display yet, which would not trigger any further discovery
+            discover();
+        }
+    }
+
+    private void store(int position, ContentItem item) {
+        int page = position / PAGE_SIZE;
+        ContentItem[] items = pages.get(page);
+        if (items == null) {
+            items = new ContentItem[PAGE_SIZE];
+            pages.put(page, items);
+        }
+        items[position % PAGE_SIZE] = item;
+    }
+
+    private void trimPages() {
+        Iterator<Map.Entry<Integer, ContentItem[]>> iterator = pages.entrySet().iterator();
+        while (pages.size() > maxPages && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void loadPage(final int page) {
+        if (!pendingPages.add(page)) {
+            return;
+        }
+        final int pageStart = page * PAGE_SIZE;
+        final int pageEnd = Math.min(size, pageStart + PAGE_SIZE);
+        final int taskGeneration = generation;
+        // packages overlapping the page, along with their first position
+        final List<SmuttyPackage> pagePackages = new ArrayList<>();
+        final List<Integer> pageFirstPositions = new ArrayList<>();
+        for (int index = packageIndex(pageStart); index < packages.size() && firstPositions[index] < pageEnd; index++) {
+            pagePackages.add(packages.get(index));
+            pageFirstPositions.add(firstPositions[index]);
+        }
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<List<ContentItem>> pageItems = new ArrayList<>(pagePackages.size());
+                for (SmuttyPackage pkg : pagePackages) {
+                    try {
+                        pageItems.add(source.items(pkg));
+                    } catch (IOException e) {
+                        pageItems.add(null);
+                        deliverFailure(taskGeneration, pkg, e);
+                    }
+                }
+                delivery.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (taskGeneration == generation) {
+                            onPageLoaded(page, pageStart, pageEnd, pageFirstPositions, pageItems);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int page, int pageStart, int pageEnd, List<Integer> pageFirstPositions, List<List<ContentItem>> pageItems) {
+        pendingPages.remove(page);
+        for (int i = 0; i < pageItems.size(); i++) {
+            List<ContentItem> items = pageItems.get(i);
+            if (items == null) {
+                continue;
+            }
+            int first = pageFirstPositions.get(i);
+            // the package content may have changed since its items were counted
+            int end = i + 1 < pageFirstPositions.size() ? pageFirstPositions.get(i + 1) : pageEnd;
+            for (int position = Math.max(first, pageStart); position < end && position - first < items.size(); position++) {
+                store(position, items.get(position - first));
+            }
+        }
+        trimPages();
+        listener.onItemsLoaded(pageStart, pageEnd - pageStart);
+    }
+
+    private void deliverFailure(final int taskGeneration, final SmuttyPackage pkg, final IOException e) {
+        delivery.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (taskGeneration == generation) {
+                    listener.onLoadFailed(pkg, e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Md5Set;
+
+/**
+ * Applies an incoming index to the packages table as a diff keyed by md5.
+ *
+ * New packages are inserted, changed ones updated and unchanged ones left alone,
+ * the writes going through a {@link PackageWriteBuffer}. Once the whole index has been seen, packages
+ * no longer listed are flagged through referenced_in_index.
+ */
+public class IndexDiff {
+
+    // lookups stay below the sqlite limit of 999 bound variables per statement
+    public static final int BATCH_SIZE = 500;
+
+    private final AppDatabase appDatabase;
+    private final SmuttyPackageDao pkgDao;
+    private final PackageWriteBuffer writeBuffer;
+    private final Md5Set seenMd5;
+    // hashes of the source being read, not sealed in seenMd5 yet
+    private final Set<String> sourceMd5s;
+    private final List<SmuttyPackage> pending;
+    private int inserted;
+    private int updated;
+    private int unchanged;
+    private int unreferenced;
+    private int duplicates;
+
+    public IndexDiff(AppDatabase appDatabase, int writeChunkSize) {
+        this.appDatabase = appDatabase;
+        this.pkgDao = appDatabase.smuttyPackageDao();
+        this.writeBuffer = new PackageWriteBuffer(appDatabase, writeChunkSize);
+        this.seenMd5 = new Md5Set();
+        this.sourceMd5s = new HashSet<>();
+        this.pending = new ArrayList<>(BATCH_SIZE);
+        this.inserted = 0;
+        this.updated = 0;
+        this.unchanged = 0;
+        this.unreferenced = 0;
+        this.duplicates = 0;
+    }
+
+    /**
+     * @return false when the package was already listed, by a previous index source or earlier in this one
+     */
+    public boolean add(SmuttyPackage pkg) {
+        if (seenMd5.containsSealed(pkg.getMd5()) || !sourceMd5s.add(pkg.getMd5())) {
+            duplicates++;
+            return false;
+        }
+        seenMd5.add(pkg.getMd5());
+        pending.add(pkg);
+        if (pending.size() >= BATCH_SIZE) {
+            diffPending();
+        }
+        return true;
+    }
+
+    /**
+     * Ends an index source: packages it listed are skipped when listed again by the next ones.
+     */
+    public void endSource() {
+        seenMd5.seal();
+        sourceMd5s.clear();
+    }
+
+    /**
+     * Marks a package as still referenced without checking its database row.
+     */
+    public void markSeen(String md5) {
+        seenMd5.add(md5);
+    }
+
+    /**
+     * Writes every package seen so far, used on completion as well as on cancel.
+     */
+    public void flush() {
+        diffPending();
+        writeBuffer.flush();
+    }
+
+    private void diffPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<SmuttyPackage> batch = new ArrayList<>(pending);
+        pending.clear();
+        List<String> md5s = new ArrayList<>(batch.size());
+        for (SmuttyPackage pkg : batch) {
+            md5s.add(pkg.getMd5());
+        }
+        Map<String, SmuttyPackage> existing = new HashMap<>();
+        for (SmuttyPackage pkg : pkgDao.findByMd5(md5s)) {
+            existing.put(pkg.getMd5(), pkg);
+        }
+        for (SmuttyPackage pkg : batch) {
+            SmuttyPackage current = existing.get(pkg.getMd5());
+            if (current == null) {
+                // inserts replace, so a duplicate which is not yet written is simply inserted again
+                writeBuffer.insert(pkg);
+                existing.put(pkg.getMd5(), pkg);
+                inserted++;
+            } else if (!current.equals(pkg)) {
+                writeBuffer.update(pkg);
+                existing.put(pkg.getMd5(), pkg);
+                updated++;
+            } else {
+                unchanged++;
+            }
+        }
+    }
+
+    /**
+     * Flushes pending packages and flags the ones which were not part of the index.
+     * Must only be called once the whole index has been processed.
+     */
+    public void finish() {
+        flush();
+        String after = "";
+        while (true) {
+            List<String> md5s = pkgDao.getReferencedMd5After(after, BATCH_SIZE);
+            if (md5s.isEmpty()) {
+                break;
+            }
+            final List<String> missing = new ArrayList<>();
+            for (String md5 : md5s) {
+                if (!seenMd5.contains(md5)) {
+                    missing.add(md5);
+                }
+            }
+            if (!missing.isEmpty()) {
+                appDatabase.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        pkgDao.unreference(missing);
+                    }
+                });
+                unreferenced += missing.size();
+            }
+            after = md5s.get(md5s.size() - 1);
+        }
+    }
+
+    /**
+     * Whether a package was part of the indexes processed so far.
+     */
+    public boolean isSeen(String md5) {
+        return seenMd5.contains(md5);
+    }
+
+    public PackageWriteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    public int getUnreferenced() {
+        return unreferenced;
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Pull parser over an index json array, producing one package at a time
+ * so that the whole index never has to be held in memory.
+ */
+public class IndexReader implements Closeable {
+
+    private JsonReader jsonReader;
+    private boolean finished;
+    private int count;
+
+    public IndexReader(InputStream inputStream) throws IOException {
+        this.jsonReader = new JsonReader(new BufferedReader(new InputStreamReader(inputStream, Utils.CHARSET_UTF8)));
+        this.finished = false;
+        this.count = 0;
+        jsonReader.beginArray();
+    }
+
+    public boolean hasNext() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (jsonReader.hasNext()) {
+            return true;
+        }
+        jsonReader.endArray();
+        finished = true;
+        return false;
+    }
+
+    public SmuttyPackage next() throws IOException {
+        SmuttyPackage pkg = SmuttyPackage.fromJsonReader(jsonReader);
+        count++;
+        return pkg;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        jsonReader.close();
+    }
+}
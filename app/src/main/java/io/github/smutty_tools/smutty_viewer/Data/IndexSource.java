@@ -0,0 +1,120 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * Sync state of a configured index url.
+ *
+ * Validators are those of the last index copy whose packages were completely processed.
+ * The checkpoint is the number of leading packages of an index copy processed by a sync
+ * that did not finish, along with the validators of that copy.
+ */
+@Entity(tableName = "index_sources")
+public class IndexSource {
+
+    @PrimaryKey
+    @NonNull
+    private String url;
+
+    private String etag;
+
+    @ColumnInfo(name = "last_modified")
+    private String lastModified;
+
+    @ColumnInfo(name = "latency_millis")
+    private long latencyMillis;
+
+    @ColumnInfo(name = "last_sync")
+    private long lastSync;
+
+    @ColumnInfo(name = "package_count")
+    private int packageCount;
+
+    @ColumnInfo(name = "checkpoint_etag")
+    private String checkpointEtag;
+
+    @ColumnInfo(name = "checkpoint_last_modified")
+    private String checkpointLastModified;
+
+    @ColumnInfo(name = "checkpoint_position")
+    private int checkpointPosition;
+
+    public IndexSource(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public long getLastSync() {
+        return lastSync;
+    }
+
+    public void setLastSync(long lastSync) {
+        this.lastSync = lastSync;
+    }
+
+    public int getPackageCount() {
+        return packageCount;
+    }
+
+    public void setPackageCount(int packageCount) {
+        this.packageCount = packageCount;
+    }
+
+    public String getCheckpointEtag() {
+        return checkpointEtag;
+    }
+
+    public void setCheckpointEtag(String checkpointEtag) {
+        this.checkpointEtag = checkpointEtag;
+    }
+
+    public String getCheckpointLastModified() {
+        return checkpointLastModified;
+    }
+
+    public void setCheckpointLastModified(String checkpointLastModified) {
+        this.checkpointLastModified = checkpointLastModified;
+    }
+
+    public int getCheckpointPosition() {
+        return checkpointPosition;
+    }
+
+    public void setCheckpointPosition(int checkpointPosition) {
+        this.checkpointPosition = checkpointPosition;
+    }
+}
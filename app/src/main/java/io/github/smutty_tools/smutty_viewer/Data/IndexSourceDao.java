@@ -0,0 +1,26 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface IndexSourceDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(IndexSource... sources);
+
+    @Query("SELECT * FROM index_sources ORDER BY latency_millis")
+    List<IndexSource> getAll();
+
+    @Query("SELECT * FROM index_sources WHERE url = :url")
+    IndexSource find(String url);
+
+    @Query("UPDATE index_sources SET checkpoint_etag = :etag, checkpoint_last_modified = :lastModified, checkpoint_position = :position WHERE url = :url")
+    void saveCheckpoint(String url, String etag, String lastModified, int position);
+
+    @Query("DELETE FROM index_sources WHERE url NOT IN (:urls)")
+    void deleteAllExcept(List<String> urls);
+}
@@ -0,0 +1,53 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * Marks a package whose tags were indexed, including packages without tags and packages
+ * whose content could not be read, so that synchronization parses each package once.
+ */
+@Entity(tableName = "indexed_packages")
+public class IndexedPackage {
+
+    @PrimaryKey
+    @NonNull
+    private String md5;
+
+    @ColumnInfo(name = "tag_count")
+    private int tagCount;
+
+    private boolean failed;
+
+    public IndexedPackage(String md5, int tagCount, boolean failed) {
+        this.md5 = md5;
+        this.tagCount = tagCount;
+        this.failed = failed;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public void setTagCount(int tagCount) {
+        this.tagCount = tagCount;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
@@ -0,0 +1,231 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.smutty_tools.smutty_viewer.Store.PackageStore;
+
+/**
+ * Keeps the package store under the storage quota.
+ *
+ * Downloads reserve their estimated size when they are admitted, so that parallel downloads
+ * cannot overshoot the quota together. Packages left out for the quota, evicted or never
+ * fetched, are marked evicted and admitted again by a later sync once they fit. Over quota,
+ * the least recently accessed packages are evicted first, files never accessed since they
+ * are tracked being the oldest.
+ */
+public class PackageCacheManager {
+
+    public static final int DEFAULT_QUOTA_MBYTES = 2000;
+    private static final long MBYTE = 1048576;
+
+    private final AppDatabase appDatabase;
+    private final PackageUsageDao usageDao;
+    private final PackageStore packageStore;
+    private final long quotaBytes;
+    private long storedBytes;
+    private int storedPackages;
+    private long reservedBytes;
+    private int skipped;
+    private int evicted;
+    private long evictedBytes;
+
+    public PackageCacheManager(AppDatabase appDatabase, PackageStore packageStore, long quotaBytes) {
+        this.appDatabase = appDatabase;
+        this.usageDao = appDatabase.packageUsageDao();
+        this.packageStore = packageStore;
+        this.quotaBytes = quotaBytes;
+        this.storedBytes = 0;
+        this.storedPackages = 0;
+        this.reservedBytes = 0;
+        this.skipped = 0;
+        this.evicted = 0;
+        this.evictedBytes = 0;
+    }
+
+    public static long parseQuota(String mbytes) {
+        try {
+            long quota = Long.parseLong(mbytes);
+            if (quota > 0) {
+                return quota * MBYTE;
+            }
+        } catch (NumberFormatException e) {
+            // use default
+        }
+        return DEFAULT_QUOTA_MBYTES * MBYTE;
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    /**
+     * Starts the accounting of a sync from the packages found in the store.
+     */
+    public synchronized void setStored(long storedBytes, int storedPackages) {
+        this.storedBytes = storedBytes;
+        this.storedPackages = storedPackages;
+    }
+
+    /**
+     * Admits the download of a package missing from the store when its size fits the quota,
+     * taking the downloads in flight into account. The size is known for an evicted package,
+     * otherwise estimated from the packages in the store.
+     *
+     * @return bytes reserved until {@link #release(long)}, -1 when the package is not fetched
+     */
+    public long reserve(String md5) {
+        PackageUsage usage = usageDao.find(md5);
+        long estimate;
+        synchronized (this) {
+            estimate = usage != null && usage.getFileSize() > 0 ? usage.getFileSize()
+                    : (storedPackages == 0 ? 0 : storedBytes / storedPackages);
+            if (fits(storedBytes + reservedBytes, estimate, quotaBytes)) {
+                reservedBytes += estimate;
+                return estimate;
+            }
+            skipped++;
+        }
+        if (usage == null || !usage.isEvicted()) {
+            // considered again by the next syncs
+            usageDao.insert(new PackageUsage(md5, estimate, usage == null ? 0 : usage.getLastAccess(), true));
+        }
+        return -1;
+    }
+
+    /**
+     * @param committedBytes size of the stored packages and of the downloads in flight
+     */
+    static boolean fits(long committedBytes, long estimate, long quotaBytes) {
+        // with nothing to estimate from, packages are admitted until the quota is reached
+        return committedBytes < quotaBytes && committedBytes + estimate <= quotaBytes;
+    }
+
+    /**
+     * Ends a reservation, once the downloaded package was recorded or the download failed.
+     */
+    public synchronized void release(long reservation) {
+        reservedBytes -= reservation;
+    }
+
+    public void recordStored(String md5, long fileSize) {
+        usageDao.insert(new PackageUsage(md5, fileSize, System.currentTimeMillis(), false));
+        synchronized (this) {
+            storedBytes += fileSize;
+            storedPackages++;
+        }
+    }
+
+    /**
+     * Whether the quota now leaves room for one of the referenced packages left out before.
+     */
+    public boolean hasRoomForEvicted() {
+        Long smallest = usageDao.smallestEvicted();
+        synchronized (this) {
+            return smallest != null && storedBytes + smallest <= quotaBytes;
+        }
+    }
+
+    public void markAccessed(String md5) {
+        usageDao.touch(md5, System.currentTimeMillis());
+    }
+
+    /**
+     * Evicts the least recently accessed packages until the store fits the quota.
+     *
+     * @param md5s packages in the store
+     * @param sizes size of each package file
+     * @param totalBytes sum of the sizes
+     * @return hashes of the evicted packages
+     */
+    public List<String> enforceQuota(List<String> md5s, long[] sizes, long totalBytes) {
+        final List<String> evictedMd5s = new ArrayList<>();
+        if (totalBytes <= quotaBytes) {
+            return evictedMd5s;
+        }
+        long[] lastAccess = new long[md5s.size()];
+        for (int start = 0; start < md5s.size(); start += IndexDiff.BATCH_SIZE) {
+            List<String> batch = md5s.subList(start, Math.min(start + IndexDiff.BATCH_SIZE, md5s.size()));
+            Map<String, Long> accessByMd5 = new HashMap<>();
+            for (PackageUsage usage : usageDao.findByMd5(batch)) {
+                accessByMd5.put(usage.getMd5(), usage.getLastAccess());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Long access = accessByMd5.get(batch.get(i));
+                lastAccess[start + i] = access == null ? 0 : access;
+            }
+        }
+        final List<PackageUsage> evictedUsages = new ArrayList<>();
+        for (int index : selectEvictions(sizes, lastAccess, md5s.size(), totalBytes, quotaBytes)) {
+            String md5 = md5s.get(index);
+            File file = packageStore.getFile(md5);
+            if (file.delete()) {
+                // thumbnails only live as long as their package
+                packageStore.getThumbnailFile(md5).delete();
+                evictedUsages.add(new PackageUsage(md5, sizes[index], lastAccess[index], true));
+                evictedMd5s.add(md5);
+                synchronized (this) {
+                    storedBytes -= sizes[index];
+                    storedPackages--;
+                }
+                evictedBytes += sizes[index];
+            }
+        }
+        appDatabase.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                VerifiedFileDao verifiedFileDao = appDatabase.verifiedFileDao();
+                for (PackageUsage usage : evictedUsages) {
+                    verifiedFileDao.delete(usage.getMd5());
+                }
+                usageDao.insert(evictedUsages.toArray(new PackageUsage[evictedUsages.size()]));
+            }
+        });
+        evicted += evictedUsages.size();
+        return evictedMd5s;
+    }
+
+    /**
+     * @return indexes of the entries to evict, least recently accessed first, until the total fits the quota
+     */
+    static int[] selectEvictions(long[] sizes, final long[] lastAccess, int count, long totalBytes, long quotaBytes) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long delta = lastAccess[a] - lastAccess[b];
+                return delta < 0 ? -1 : (delta > 0 ? 1 : 0);
+            }
+        });
+        int selected = 0;
+        while (totalBytes > quotaBytes && selected < count) {
+            totalBytes -= sizes[order[selected]];
+            selected++;
+        }
+        int[] result = new int[selected];
+        for (int i = 0; i < selected; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    public synchronized int getSkipped() {
+        return skipped;
+    }
+
+    public int getEvicted() {
+        return evicted;
+    }
+
+    public long getEvictedBytes() {
+        return evictedBytes;
+    }
+}
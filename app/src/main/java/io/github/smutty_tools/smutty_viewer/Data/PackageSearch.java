@@ -0,0 +1,193 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Md5Set;
+
+/**
+ * Paged search over the referenced packages, combining a full text query on their names
+ * with content type, content id range and tag filters.
+ *
+ * Tags are resolved through the {@link TagIndex}, keeping the packages where one item carries
+ * every tag, once per filter rather than once per page.
+ *
+ * Pages are keyed on the last package of the previous page rather than on an offset,
+ * so that reading deep pages costs the same as reading the first one.
+ */
+public class PackageSearch {
+
+    private static final String COLUMNS = "p.`md5`, p.`referenced_in_index`, p.`file_name`, p.`content_type`, p.`max_id`, p.`min_id`, p.`has_tags`";
+
+    public static class Filter {
+        private String text = null;
+        private String contentType = null;
+        private Integer minId = null;
+        private Integer maxId = null;
+        private final List<String> tags = new ArrayList<>();
+        private List<String> taggedMd5s = null;
+
+        /**
+         * Words to find in package names, each matched as a prefix.
+         */
+        public Filter text(String text) {
+            this.text = text;
+            return this;
+        }
+
+        public Filter contentType(String contentType) {
+            this.contentType = contentType;
+            taggedMd5s = null;
+            return this;
+        }
+
+        /**
+         * Keeps the packages whose id range overlaps the given one.
+         */
+        public Filter idRange(int minId, int maxId) {
+            this.minId = minId;
+            this.maxId = maxId;
+            return this;
+        }
+
+        /**
+         * Keeps the packages holding items with the tag, may be called for several tags.
+         */
+        public Filter tag(String tag) {
+            tags.add(tag);
+            taggedMd5s = null;
+            return this;
+        }
+    }
+
+    private final AppDatabase appDatabase;
+    private final TagIndex tagIndex;
+
+    public PackageSearch(AppDatabase appDatabase) {
+        this.appDatabase = appDatabase;
+        this.tagIndex = new TagIndex(appDatabase);
+    }
+
+    /**
+     * Turns free text into a full text query: every word of letters and digits, in any script, is required as a prefix.
+     *
+     * @return the match expression, null when the text holds no word
+     */
+    static String toMatchExpression(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder expression = new StringBuilder();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append(word).append('*');
+        }
+        return expression.length() == 0 ? null : expression.toString();
+    }
+
+    /**
+     * @param taggedMd5s packages carrying the tags of the filter, null when it has no tag
+     */
+    static SimpleSQLiteQuery buildQuery(Filter filter, List<String> taggedMd5s, SmuttyPackage after, int limit, boolean count) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(count ? "COUNT(*)" : COLUMNS)
+                .append(" FROM `packages` p WHERE p.`referenced_in_index` = 1");
+        List<Object> args = new ArrayList<>();
+        String match = toMatchExpression(filter.text);
+        if (match != null) {
+            sql.append(" AND p.rowid IN (SELECT docid FROM `packages_fts` WHERE `packages_fts` MATCH ?)");
+            args.add(match);
+        }
+        if (filter.contentType != null) {
+            sql.append(" AND p.`content_type` = ?");
+            args.add(filter.contentType);
+        }
+        if (filter.minId != null) {
+            sql.append(" AND p.`max_id` >= ? AND p.`min_id` <= ?");
+            args.add(filter.minId);
+            args.add(filter.maxId);
+        }
+        if (taggedMd5s != null) {
+            // inlined rather than bound, there may be more packages than query parameters
+            sql.append(" AND p.`md5` IN (");
+            String separator = "";
+            for (String md5 : taggedMd5s) {
+                if (Md5Set.isMd5(md5)) {
+                    sql.append(separator).append('\'').append(md5).append('\'');
+                    separator = ", ";
+                }
+            }
+            sql.append(")");
+        }
+        if (count) {
+            return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+        }
+        if (after != null) {
+            // strictly after the last package of the previous page, in the order of the results
+            sql.append(" AND (p.`content_type` > ? OR (p.`content_type` = ? AND (p.`min_id` > ? OR (p.`min_id` = ? AND p.`md5` > ?))))");
+            args.add(after.getContentType());
+            args.add(after.getContentType());
+            args.add(after.getMinId());
+            args.add(after.getMinId());
+            args.add(after.getMd5());
+        }
+        sql.append(" ORDER BY p.`content_type`, p.`min_id`, p.`md5` LIMIT ?");
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * @param after last package of the previous page, null for the first page
+     * @return cursor over at most {@code limit} packages, to be read with {@link #readPackage(Cursor)}
+     */
+    public Cursor query(Filter filter, SmuttyPackage after, int limit) {
+        return appDatabase.query(buildQuery(filter, resolveTags(filter), after, limit, false));
+    }
+
+    private List<String> resolveTags(Filter filter) {
+        if (filter.tags.isEmpty()) {
+            return null;
+        }
+        synchronized (filter) {
+            if (filter.taggedMd5s == null) {
+                filter.taggedMd5s = tagIndex.filter(filter.contentType, filter.tags);
+            }
+            return filter.taggedMd5s;
+        }
+    }
+
+    public List<SmuttyPackage> page(Filter filter, SmuttyPackage after, int limit) {
+        Cursor cursor = query(filter, after, limit);
+        try {
+            List<SmuttyPackage> packages = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                packages.add(readPackage(cursor));
+            }
+            return packages;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public int count(Filter filter) {
+        Cursor cursor = appDatabase.query(buildQuery(filter, resolveTags(filter), null, 0, true));
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static SmuttyPackage readPackage(Cursor cursor) {
+        return new SmuttyPackage(cursor.getString(0), cursor.getInt(1) != 0, cursor.getString(2), cursor.getString(3),
+                cursor.getInt(4), cursor.getInt(5), cursor.getInt(6) != 0);
+    }
+}
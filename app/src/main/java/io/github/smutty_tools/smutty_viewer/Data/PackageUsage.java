@@ -0,0 +1,65 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * Size and last access time of a package file, kept after the file was evicted
+ * so that synchronization does not fetch it again.
+ */
+@Entity(tableName = "package_usage")
+public class PackageUsage {
+
+    @PrimaryKey
+    @NonNull
+    private String md5;
+
+    @ColumnInfo(name = "file_size")
+    private long fileSize;
+
+    @ColumnInfo(name = "last_access")
+    private long lastAccess;
+
+    private boolean evicted;
+
+    public PackageUsage(String md5, long fileSize, long lastAccess, boolean evicted) {
+        this.md5 = md5;
+        this.fileSize = fileSize;
+        this.lastAccess = lastAccess;
+        this.evicted = evicted;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public void setLastAccess(long lastAccess) {
+        this.lastAccess = lastAccess;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    public void setEvicted(boolean evicted) {
+        this.evicted = evicted;
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface PackageUsageDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(PackageUsage... usages);
+
+    @Query("SELECT * FROM package_usage WHERE md5 = :md5")
+    PackageUsage find(String md5);
+
+    @Query("SELECT * FROM package_usage WHERE md5 IN (:md5s)")
+    List<PackageUsage> findByMd5(List<String> md5s);
+
+    @Query("UPDATE package_usage SET last_access = :lastAccess WHERE md5 = :md5")
+    void touch(String md5, long lastAccess);
+
+    @Query("SELECT MIN(u.file_size) FROM package_usage u JOIN packages p ON p.md5 = u.md5 WHERE u.evicted = 1 AND p.referenced_in_index = 1")
+    Long smallestEvicted();
+}
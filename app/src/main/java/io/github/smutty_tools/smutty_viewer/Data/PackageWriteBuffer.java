@@ -0,0 +1,89 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects package writes and applies them in chunks, one transaction per chunk,
+ * so that sqlite syncs its journal once per chunk instead of once per row.
+ */
+public class PackageWriteBuffer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final AppDatabase appDatabase;
+    private final SmuttyPackageDao pkgDao;
+    private final int chunkSize;
+    private final List<SmuttyPackage> inserts;
+    private final List<SmuttyPackage> updates;
+    private int rowsWritten;
+    private long writeNanos;
+
+    public PackageWriteBuffer(AppDatabase appDatabase, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.appDatabase = appDatabase;
+        this.pkgDao = appDatabase.smuttyPackageDao();
+        this.chunkSize = chunkSize;
+        this.inserts = new ArrayList<>(chunkSize);
+        this.updates = new ArrayList<>();
+        this.rowsWritten = 0;
+        this.writeNanos = 0;
+    }
+
+    public void insert(SmuttyPackage pkg) {
+        inserts.add(pkg);
+        flushIfFull();
+    }
+
+    public void update(SmuttyPackage pkg) {
+        updates.add(pkg);
+        flushIfFull();
+    }
+
+    private void flushIfFull() {
+        if (inserts.size() + updates.size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (inserts.isEmpty() && updates.isEmpty()) {
+            return;
+        }
+        final SmuttyPackage[] insertChunk = inserts.toArray(new SmuttyPackage[inserts.size()]);
+        final SmuttyPackage[] updateChunk = updates.toArray(new SmuttyPackage[updates.size()]);
+        inserts.clear();
+        updates.clear();
+        long start = System.nanoTime();
+        appDatabase.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                if (insertChunk.length > 0) {
+                    pkgDao.insert(insertChunk);
+                }
+                if (updateChunk.length > 0) {
+                    pkgDao.update(updateChunk);
+                }
+            }
+        });
+        writeNanos += System.nanoTime() - start;
+        rowsWritten += insertChunk.length + updateChunk.length;
+    }
+
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getWriteMillis() {
+        return writeNanos / 1000000;
+    }
+
+    public long getRowsPerSecond() {
+        if (writeNanos == 0) {
+            return 0;
+        }
+        return rowsWritten * 1000000000L / writeNanos;
+    }
+}
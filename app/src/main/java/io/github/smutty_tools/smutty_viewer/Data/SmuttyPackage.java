@@ -2,15 +2,22 @@ package io.github.smutty_tools.smutty_viewer.Data;
 
 import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.support.annotation.NonNull;
 
+import com.google.gson.stream.JsonReader;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-@Entity(tableName = "packages")
+import java.io.IOException;
+
+@Entity(tableName = "packages", indices = {@Index({"content_type", "min_id", "max_id"})})
 public class SmuttyPackage {
 
+    public static final String CONTENT_TYPE_IMAGE = "image";
+
     @PrimaryKey
     @NonNull
     private String md5;
@@ -44,6 +51,47 @@ public class SmuttyPackage {
                 jsonObject.getBoolean("tags"));
     }
 
+    public static SmuttyPackage fromJsonReader(JsonReader jsonReader) throws IOException {
+        String md5 = null;
+        String fileName = null;
+        String contentType = null;
+        Integer maxId = null;
+        Integer minId = null;
+        Boolean hasTags = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            switch (name) {
+                case "md5":
+                    md5 = jsonReader.nextString();
+                    break;
+                case "file":
+                    fileName = jsonReader.nextString();
+                    break;
+                case "type":
+                    contentType = jsonReader.nextString();
+                    break;
+                case "max_id":
+                    maxId = jsonReader.nextInt();
+                    break;
+                case "min_id":
+                    minId = jsonReader.nextInt();
+                    break;
+                case "tags":
+                    hasTags = jsonReader.nextBoolean();
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+        if (md5 == null || fileName == null || contentType == null || maxId == null || minId == null || hasTags == null) {
+            throw new IOException("Incomplete package entry in index at " + jsonReader.getPath());
+        }
+        return new SmuttyPackage(md5, true, fileName, contentType, maxId, minId, hasTags);
+    }
+
     public SmuttyPackage(String md5, boolean referencedInIndex, String fileName, String contentType, int maxId, int minId, boolean hasTags) {
         this.md5 = md5;
         this.referencedInIndex = referencedInIndex;
@@ -110,6 +158,29 @@ public class SmuttyPackage {
         this.hasTags = hasTags;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SmuttyPackage that = (SmuttyPackage) o;
+        return referencedInIndex == that.referencedInIndex
+                && maxId == that.maxId
+                && minId == that.minId
+                && hasTags == that.hasTags
+                && md5.equals(that.md5)
+                && (fileName == null ? that.fileName == null : fileName.equals(that.fileName))
+                && (contentType == null ? that.contentType == null : contentType.equals(that.contentType));
+    }
+
+    @Override
+    public int hashCode() {
+        return md5.hashCode();
+    }
+
     public String getPackageFile() {
         StringBuffer buf = new StringBuffer(md5);
         buf.append('_');
@@ -4,12 +4,37 @@ import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
+import android.arch.persistence.room.Update;
+
+import java.util.List;
 
 @Dao
 public interface SmuttyPackageDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(SmuttyPackage... packages);
 
+    @Update
+    void update(SmuttyPackage... packages);
+
     @Query("DELETE FROM packages")
     void truncate();
+
+    @Query("SELECT * FROM packages WHERE md5 IN (:md5s)")
+    List<SmuttyPackage> findByMd5(List<String> md5s);
+
+    @Query("SELECT md5 FROM packages WHERE referenced_in_index = 1 AND md5 > :after ORDER BY md5 LIMIT :limit")
+    List<String> getReferencedMd5After(String after, int limit);
+
+    @Query("UPDATE packages SET referenced_in_index = 0 WHERE md5 IN (:md5s)")
+    void unreference(List<String> md5s);
+
+    /**
+     * Package whose range starts last at or before the id, the one holding it when its max id reaches it.
+     * Bounded on min_id, the lookup is a single descending seek in the range index.
+     */
+    @Query("SELECT * FROM packages WHERE referenced_in_index = 1 AND content_type = :contentType AND min_id <= :contentId ORDER BY min_id DESC LIMIT 1")
+    SmuttyPackage findLastStartingAtOrBefore(String contentType, int contentId);
+
+    @Query("SELECT * FROM packages WHERE referenced_in_index = 1 AND content_type = :contentType AND min_id >= :minId ORDER BY min_id LIMIT :limit")
+    List<SmuttyPackage> getFromMinId(String contentType, int minId, int limit);
 }
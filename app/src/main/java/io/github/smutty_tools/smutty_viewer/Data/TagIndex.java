@@ -0,0 +1,246 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import io.github.smutty_tools.smutty_viewer.Decompress.Decompressor;
+import io.github.smutty_tools.smutty_viewer.Tools.SortedIntArrays;
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Inverted index from tags to content ids, built from the packages carrying tags.
+ *
+ * Package content is expected to be a json array of items, each an object with an integer
+ * {@code id} and a {@code tags} array of strings; other fields are ignored.
+ */
+public class TagIndex {
+
+    private final AppDatabase appDatabase;
+    private int indexedPackages;
+    private long indexMillis;
+
+    /**
+     * Growable list of content ids.
+     */
+    private static class IdList {
+        int[] values = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+    }
+
+    public TagIndex(AppDatabase appDatabase) {
+        this.appDatabase = appDatabase;
+        this.indexedPackages = 0;
+        this.indexMillis = 0;
+    }
+
+    public boolean isIndexed(String md5) {
+        return appDatabase.tagPostingDao().countIndexed(md5) > 0;
+    }
+
+    /**
+     * Records that the content of a package could not be read, so that it is not parsed again.
+     */
+    public void markFailed(SmuttyPackage pkg) {
+        appDatabase.tagPostingDao().markIndexed(new IndexedPackage(pkg.getMd5(), 0, true));
+    }
+
+    /**
+     * Replaces the postings of a package with the tags read from its compressed file,
+     * and marks it indexed even when it has no tags.
+     *
+     * @return number of distinct tags of the package
+     */
+    public int index(SmuttyPackage pkg, File file) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, int[]> tags;
+        InputStream inputStream = Decompressor.streamXz(new FileInputStream(file));
+        try {
+            tags = readTags(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        final List<TagPosting> postings = new ArrayList<>(tags.size());
+        for (Map.Entry<String, int[]> entry : tags.entrySet()) {
+            int[] ids = entry.getValue();
+            postings.add(new TagPosting(entry.getKey(), pkg.getMd5(), pkg.getContentType(), SortedIntArrays.encode(ids, ids.length)));
+        }
+        final TagPostingDao dao = appDatabase.tagPostingDao();
+        final String md5 = pkg.getMd5();
+        appDatabase.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                dao.deletePackage(md5);
+                dao.insert(postings);
+                dao.markIndexed(new IndexedPackage(md5, postings.size(), false));
+            }
+        });
+        synchronized (this) {
+            indexedPackages++;
+            indexMillis += System.currentTimeMillis() - start;
+        }
+        return postings.size();
+    }
+
+    /**
+     * @return sorted distinct content ids of each tag found in the package content
+     */
+    static Map<String, int[]> readTags(InputStream inputStream) throws IOException {
+        Map<String, IdList> lists = new HashMap<>();
+        JsonReader jsonReader = new JsonReader(new BufferedReader(new InputStreamReader(inputStream, Utils.CHARSET_UTF8)));
+        try {
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                readItem(jsonReader, lists);
+            }
+            jsonReader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Unexpected package content at " + jsonReader.getPath() + ": " + e.getMessage());
+        }
+        Map<String, int[]> tags = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, IdList> entry : lists.entrySet()) {
+            IdList list = entry.getValue();
+            tags.put(entry.getKey(), Arrays.copyOf(list.values, SortedIntArrays.sortDistinct(list.values, list.size)));
+        }
+        return tags;
+    }
+
+    private static void readItem(JsonReader jsonReader, Map<String, IdList> lists) throws IOException {
+        Integer id = null;
+        List<String> itemTags = new ArrayList<>();
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if ("id".equals(name)) {
+                id = jsonReader.nextInt();
+            } else if ("tags".equals(name) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    itemTags.add(jsonReader.nextString());
+                }
+                jsonReader.endArray();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        if (id == null) {
+            throw new IOException("Item without id at " + jsonReader.getPath());
+        }
+        for (String tag : itemTags) {
+            IdList list = lists.get(tag);
+            if (list == null) {
+                list = new IdList();
+                lists.put(tag, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * @param contentType type of the packages, null for packages of any type
+     * @return sorted hashes of the packages holding at least one item carrying every one of the tags
+     */
+    public List<String> filter(String contentType, Collection<String> tags) {
+        if (tags.isEmpty()) {
+            throw new IllegalArgumentException("At least one tag is required");
+        }
+        List<String> distinctTags = new ArrayList<>(new HashSet<>(tags));
+        TagPostingDao dao = appDatabase.tagPostingDao();
+        List<TagPosting> postings = contentType == null ? dao.findAnyType(distinctTags) : dao.find(contentType, distinctTags);
+        return intersectPackages(postings, distinctTags.size());
+    }
+
+    /**
+     * Intersects the postings of each package holding all the tags, postings being ordered by package.
+     *
+     * @return hashes of the packages where the intersection is not empty
+     */
+    static List<String> intersectPackages(List<TagPosting> postings, int tagCount) {
+        List<String> matches = new ArrayList<>();
+        int start = 0;
+        while (start < postings.size()) {
+            String md5 = postings.get(start).getMd5();
+            int end = start + 1;
+            while (end < postings.size() && postings.get(end).getMd5().equals(md5)) {
+                end++;
+            }
+            if (end - start == tagCount && intersects(postings.subList(start, end))) {
+                matches.add(md5);
+            }
+            start = end;
+        }
+        return matches;
+    }
+
+    private static boolean intersects(List<TagPosting> postings) {
+        int[][] lists = new int[postings.size()][];
+        try {
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = SortedIntArrays.decode(postings.get(i).getIds());
+            }
+        } catch (IOException e) {
+            // unreadable postings, the package is left out
+            return false;
+        }
+        // smallest lists first, to shrink the intersection as early as possible
+        Arrays.sort(lists, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a.length - b.length;
+            }
+        });
+        int[] ids = lists[0];
+        for (int i = 1; i < lists.length && ids.length > 0; i++) {
+            ids = SortedIntArrays.intersect(ids, lists[i]);
+        }
+        return ids.length > 0;
+    }
+
+    /**
+     * Drops the postings and markers of packages no longer referenced by any index.
+     *
+     * @return number of packages dropped
+     */
+    public int removeUnreferenced() {
+        final TagPostingDao dao = appDatabase.tagPostingDao();
+        final int[] deleted = new int[1];
+        appDatabase.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                dao.deleteUnreferenced();
+                deleted[0] = dao.deleteUnreferencedIndexed();
+            }
+        });
+        return deleted[0];
+    }
+
+    public synchronized int getIndexedPackages() {
+        return indexedPackages;
+    }
+
+    public synchronized long getIndexMillis() {
+        return indexMillis;
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+import android.support.annotation.NonNull;
+
+/**
+ * Content ids of a package carrying a tag, encoded with {@link io.github.smutty_tools.smutty_viewer.Tools.SortedIntArrays}.
+ */
+@Entity(tableName = "tag_postings", primaryKeys = {"tag", "md5"}, indices = {@Index("md5")})
+public class TagPosting {
+
+    @NonNull
+    private String tag;
+
+    @NonNull
+    private String md5;
+
+    @ColumnInfo(name = "content_type")
+    private String contentType;
+
+    private byte[] ids;
+
+    public TagPosting(String tag, String md5, String contentType, byte[] ids) {
+        this.tag = tag;
+        this.md5 = md5;
+        this.contentType = contentType;
+        this.ids = ids;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public byte[] getIds() {
+        return ids;
+    }
+
+    public void setIds(byte[] ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface TagPostingDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(List<TagPosting> postings);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void markIndexed(IndexedPackage indexedPackage);
+
+    @Query("SELECT COUNT(*) FROM indexed_packages WHERE md5 = :md5")
+    int countIndexed(String md5);
+
+    @Query("DELETE FROM tag_postings WHERE md5 = :md5")
+    void deletePackage(String md5);
+
+    @Query("SELECT * FROM tag_postings WHERE content_type = :contentType AND tag IN (:tags) ORDER BY md5")
+    List<TagPosting> find(String contentType, List<String> tags);
+
+    @Query("SELECT * FROM tag_postings WHERE tag IN (:tags) ORDER BY md5")
+    List<TagPosting> findAnyType(List<String> tags);
+
+    @Query("DELETE FROM tag_postings WHERE md5 NOT IN (SELECT md5 FROM packages WHERE referenced_in_index = 1)")
+    int deleteUnreferenced();
+
+    @Query("DELETE FROM indexed_packages WHERE md5 NOT IN (SELECT md5 FROM packages WHERE referenced_in_index = 1)")
+    int deleteUnreferencedIndexed();
+}
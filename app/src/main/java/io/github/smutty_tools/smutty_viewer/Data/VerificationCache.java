@@ -0,0 +1,67 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import java.io.File;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Avoids hashing package files again when their size and modification time did not
+ * change since their md5 was last verified.
+ *
+ * In full scrub mode every file is hashed again, and the cache refreshed.
+ */
+public class VerificationCache {
+
+    private final VerifiedFileDao verifiedFileDao;
+    private final boolean fullScrub;
+    private int trusted;
+    private int hashed;
+
+    public VerificationCache(AppDatabase appDatabase, boolean fullScrub) {
+        this.verifiedFileDao = appDatabase.verifiedFileDao();
+        this.fullScrub = fullScrub;
+        this.trusted = 0;
+        this.hashed = 0;
+    }
+
+    public boolean isValid(File file, String md5) {
+        if (!file.exists()) {
+            return false;
+        }
+        if (!fullScrub) {
+            VerifiedFile verifiedFile = verifiedFileDao.find(md5);
+            if (verifiedFile != null && verifiedFile.matches(file)) {
+                synchronized (this) {
+                    trusted++;
+                }
+                return true;
+            }
+        }
+        synchronized (this) {
+            hashed++;
+        }
+        String fileMd5 = Utils.FileMd5(file);
+        if (fileMd5 != null && fileMd5.equalsIgnoreCase(md5)) {
+            markVerified(file, md5);
+            return true;
+        }
+        verifiedFileDao.delete(md5);
+        return false;
+    }
+
+    public void markVerified(File file, String md5) {
+        verifiedFileDao.insert(VerifiedFile.fromFile(file, md5));
+    }
+
+    public boolean isFullScrub() {
+        return fullScrub;
+    }
+
+    public synchronized int getTrusted() {
+        return trusted;
+    }
+
+    public synchronized int getHashed() {
+        return hashed;
+    }
+}
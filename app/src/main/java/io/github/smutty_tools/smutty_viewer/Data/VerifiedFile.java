@@ -0,0 +1,63 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * Metadata of a package file at the time its md5 was last verified.
+ */
+@Entity(tableName = "verified_files")
+public class VerifiedFile {
+
+    @PrimaryKey
+    @NonNull
+    private String md5;
+
+    @ColumnInfo(name = "file_size")
+    private long fileSize;
+
+    @ColumnInfo(name = "last_modified")
+    private long lastModified;
+
+    public static VerifiedFile fromFile(File file, String md5) {
+        return new VerifiedFile(md5, file.length(), file.lastModified());
+    }
+
+    public VerifiedFile(String md5, long fileSize, long lastModified) {
+        this.md5 = md5;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public boolean matches(File file) {
+        return file.length() == fileSize && file.lastModified() == lastModified;
+    }
+}
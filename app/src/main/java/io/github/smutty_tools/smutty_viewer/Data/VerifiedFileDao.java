@@ -0,0 +1,18 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+@Dao
+public interface VerifiedFileDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(VerifiedFile... verifiedFiles);
+
+    @Query("SELECT * FROM verified_files WHERE md5 = :md5")
+    VerifiedFile find(String md5);
+
+    @Query("DELETE FROM verified_files WHERE md5 = :md5")
+    void delete(String md5);
+}
@@ -1,44 +1,154 @@
 package io.github.smutty_tools.smutty_viewer.Decompress;
 
-import android.util.Log;
-
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
 import org.tukaani.xz.XZInputStream;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Decompression of xz data, either streamed or extracted whole.
+ *
+ * XZInputStream.available() only covers the current block, so it is never used
+ * to size buffers: multi-block files and concatenated streams are handled by
+ * reading until the end of input.
+ */
 public class Decompressor {
 
-    private static final String TAG = "Decompressor";
-
-    public static byte[] extractXz(InputStream inputStream) throws IOException {
-        byte[] xzBuffer = null;
-        // decompress index file
-        XZInputStream xzIn = new XZInputStream(inputStream);
-        // trigger reading the first block
-        int result = xzIn.read();
-        if (result == -1) {
-            throw new IOException("Error while reading first byte of compressed data");
-        }
-        Log.d(TAG, "First byte read is " + Integer.toString(result));
-        // setup buffer and handle already read byte
-        int uncompressedSize = xzIn.available() + 1;
-        Log.d(TAG, "UncompressedSize data length: " + uncompressedSize);
-        xzBuffer = new byte[uncompressedSize];
-        xzBuffer[0] = (byte) result;
-        // read the rest of the file
-        result = xzIn.read(xzBuffer, 1, uncompressedSize - 1);
-        if (result != uncompressedSize - 1) {
-            throw new IOException("Could not extract all of compressed data");
-        }
-        Log.d(TAG, "Extracted " + uncompressedSize + " bytes of data from compressed input");
-        // ensure that final
-        result = xzIn.read();
-        if (result != -1) {
-            throw new IOException("Remaining data found after end of decompression");
-        }
-        // clean up
-        xzIn.close();
-        return xzBuffer;
+    public static InputStream streamXz(InputStream inputStream) throws IOException {
+        return new XZInputStream(new BufferedInputStream(inputStream));
+    }
+
+    /**
+     * @return uncompressed size of a file, read from its xz index without decompressing it
+     */
+    public static long uncompressedSize(File file) throws IOException {
+        SeekableXZInputStream xzIn = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        try {
+            return xzIn.length();
+        } finally {
+            xzIn.close();
+        }
+    }
+
+    /**
+     * Extracts a whole file, allocating exactly the uncompressed size read from the xz index.
+     */
+    public static byte[] extractXz(File file, int maxSize) throws IOException {
+        SeekableXZInputStream xzIn = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        try {
+            long uncompressedSize = xzIn.length();
+            if (uncompressedSize > maxSize) {
+                throw new IOException("Uncompressed size " + uncompressedSize + " of " + file + " exceeds " + maxSize + " bytes");
+            }
+            byte[] buffer = new byte[(int) uncompressedSize];
+            int offset = 0;
+            while (offset < buffer.length) {
+                int count = xzIn.read(buffer, offset, buffer.length - offset);
+                // the data ended before the size recorded in the index
+                if (count == -1) {
+                    throw new IOException("Could not extract all of compressed data");
+                }
+                offset += count;
+            }
+            return buffer;
+        } finally {
+            xzIn.close();
+        }
+    }
+
+    /**
+     * Extracts a multi-block file by decompressing ranges of blocks concurrently,
+     * each range written in place at its uncompressed position.
+     * Single-block files are extracted sequentially.
+     */
+    public static byte[] extractXzParallel(File file, int maxSize, ExecutorService executor, int parallelism) throws IOException {
+        SeekableXZInputStream xzIn = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        int blockCount;
+        long uncompressedSize;
+        try {
+            blockCount = xzIn.getBlockCount();
+            uncompressedSize = xzIn.length();
+        } finally {
+            xzIn.close();
+        }
+        if (blockCount <= 1 || parallelism <= 1) {
+            return extractXz(file, maxSize);
+        }
+        if (uncompressedSize > maxSize) {
+            throw new IOException("Uncompressed size " + uncompressedSize + " of " + file + " exceeds " + maxSize + " bytes");
+        }
+        byte[] buffer = new byte[(int) uncompressedSize];
+        int ranges = Math.min(blockCount, parallelism);
+        List<Future<Void>> futures = new ArrayList<>(ranges);
+        try {
+            for (int i = 0; i < ranges; i++) {
+                futures.add(executor.submit(new BlockRangeExtraction(file, buffer,
+                        blockCount * i / ranges, blockCount * (i + 1) / ranges)));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while extracting " + file);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not extract " + file, e.getCause());
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Decompresses blocks [firstBlock, endBlock) of a file with its own seekable stream.
+     */
+    private static class BlockRangeExtraction implements Callable<Void> {
+
+        private final File file;
+        private final byte[] buffer;
+        private final int firstBlock;
+        private final int endBlock;
+
+        BlockRangeExtraction(File file, byte[] buffer, int firstBlock, int endBlock) {
+            this.file = file;
+            this.buffer = buffer;
+            this.firstBlock = firstBlock;
+            this.endBlock = endBlock;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            SeekableXZInputStream xzIn = new SeekableXZInputStream(new SeekableFileInputStream(file));
+            try {
+                int offset = (int) xzIn.getBlockPos(firstBlock);
+                int end = endBlock < xzIn.getBlockCount() ? (int) xzIn.getBlockPos(endBlock) : (int) xzIn.length();
+                xzIn.seekToBlock(firstBlock);
+                while (offset < end) {
+                    int count = xzIn.read(buffer, offset, end - offset);
+                    if (count == -1) {
+                        throw new IOException("Could not extract all of compressed data");
+                    }
+                    offset += count;
+                }
+            } finally {
+                xzIn.close();
+            }
+            return null;
+        }
     }
 }
@@ -0,0 +1,138 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.smutty_tools.smutty_viewer.Exceptions.SmuttyException;
+
+/**
+ * Runs a bounded number of downloads in parallel.
+ *
+ * Submitting blocks while the pipeline is full, so the producer (the index reader)
+ * never gets more than a couple of tasks ahead of the network.
+ */
+public class DownloadScheduler {
+
+    public interface Task {
+        void execute() throws Exception;
+    }
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int MAX_PARALLELISM = 16;
+
+    private static final int QUEUED_TASKS_PER_THREAD = 2;
+
+    private final ExecutorService executorService;
+    private final Semaphore slots;
+    private final int capacity;
+    private volatile boolean cancelled;
+    private volatile Exception failure;
+
+    public DownloadScheduler(int parallelism) {
+        if (parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("Parallelism must be between 1 and " + MAX_PARALLELISM);
+        }
+        this.capacity = parallelism * QUEUED_TASKS_PER_THREAD;
+        this.slots = new Semaphore(capacity);
+        this.cancelled = false;
+        this.failure = null;
+        this.executorService = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "download-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static int parseParallelism(String value) {
+        try {
+            int parallelism = Integer.parseInt(value);
+            return Math.max(1, Math.min(MAX_PARALLELISM, parallelism));
+        } catch (NumberFormatException e) {
+            return DEFAULT_PARALLELISM;
+        }
+    }
+
+    private void checkFailure() throws SmuttyException {
+        Exception e = failure;
+        if (e instanceof SmuttyException) {
+            throw (SmuttyException) e;
+        }
+        if (e != null) {
+            throw new SmuttyException(e.getMessage(), e);
+        }
+    }
+
+    public void submit(final Task task) throws InterruptedException, SmuttyException {
+        if (cancelled) {
+            return;
+        }
+        checkFailure();
+        slots.acquire();
+        if (cancelled) {
+            slots.release();
+            return;
+        }
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!cancelled && failure == null) {
+                            task.execute();
+                        }
+                    } catch (Exception e) {
+                        synchronized (DownloadScheduler.this) {
+                            // interrupted tasks of a cancelled scheduler are not failures
+                            if (failure == null && !cancelled) {
+                                failure = e;
+                            }
+                        }
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // cancelled concurrently
+            slots.release();
+        }
+    }
+
+    public void awaitCompletion() throws InterruptedException, SmuttyException {
+        if (cancelled) {
+            return;
+        }
+        // all slots are back once every submitted task has finished
+        slots.acquire(capacity);
+        slots.release(capacity);
+        checkFailure();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        // tasks still waiting in the queue will never run, give their slots back
+        List<Runnable> dropped = executorService.shutdownNow();
+        slots.release(dropped.size());
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+    }
+}
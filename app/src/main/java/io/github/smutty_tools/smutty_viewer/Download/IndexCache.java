@@ -0,0 +1,102 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Local copy of the index files, refreshed with conditional requests
+ * (If-None-Match / If-Modified-Since) so that an unchanged index costs a single 304.
+ *
+ * Validators are kept by the caller, which should only save the ones of a result once
+ * the index has been fully processed: an interrupted sync fetches and processes it again.
+ */
+public class IndexCache {
+
+    public static class FetchResult {
+        public final String indexUrl;
+        public final File file;
+        public final boolean modified;
+        public final String etag;
+        public final String lastModified;
+        public final long latencyMillis;
+
+        FetchResult(String indexUrl, File file, boolean modified, String etag, String lastModified, long latencyMillis) {
+            this.indexUrl = indexUrl;
+            this.file = file;
+            this.modified = modified;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.latencyMillis = latencyMillis;
+        }
+    }
+
+    private static final String INDEX_FILE_PREFIX = "index-";
+    private static final String INDEX_FILE_SUFFIX = ".json.xz";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private final File cacheDirectory;
+
+    public IndexCache(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public File getIndexFile(String indexUrl) {
+        return new File(cacheDirectory, INDEX_FILE_PREFIX + Utils.StringMd5(indexUrl) + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Validators of the cached copy are only sent when that copy still exists.
+     * The latency of the result is the time until the response headers were received.
+     */
+    public FetchResult fetch(String indexUrl, String etag, String lastModified) throws IOException {
+        File indexFile = getIndexFile(indexUrl);
+        if (!indexFile.exists()) {
+            etag = null;
+            lastModified = null;
+        }
+        long start = System.currentTimeMillis();
+        URLConnection urlConnection = new URL(indexUrl).openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (etag != null) {
+            urlConnection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            urlConnection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+        if (urlConnection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+            int responseCode = httpConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                httpConnection.disconnect();
+                return new FetchResult(indexUrl, indexFile, false, etag, lastModified, System.currentTimeMillis() - start);
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                httpConnection.disconnect();
+                throw new IOException("Server answered " + responseCode + " for " + indexUrl);
+            }
+        }
+        File temporaryFile = new File(cacheDirectory, indexFile.getName() + TEMPORARY_FILE_SUFFIX);
+        InputStream inputStream = urlConnection.getInputStream();
+        long latencyMillis = System.currentTimeMillis() - start;
+        try {
+            Utils.InputToFile(inputStream, temporaryFile);
+        } finally {
+            inputStream.close();
+        }
+        if (!temporaryFile.renameTo(indexFile)) {
+            throw new IOException("Could not move " + temporaryFile + " to " + indexFile);
+        }
+        return new FetchResult(indexUrl, indexFile, true,
+                urlConnection.getHeaderField("ETag"), urlConnection.getHeaderField("Last-Modified"), latencyMillis);
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import io.github.smutty_tools.smutty_viewer.Exceptions.SmuttyException;
+
+/**
+ * Base urls serving the same packages, ranked by the latency and throughput measured
+ * on the downloads they served.
+ *
+ * A package is downloaded from the best ranked mirror, then from the next ones if that fails.
+ * Mirrors failing several downloads in a row are quarantined, for a delay doubling with
+ * each new failure, and only used once no healthy mirror is left.
+ */
+public class MirrorPool {
+
+    public static final long DEFAULT_QUARANTINE_MILLIS = 30000;
+    public static final int MAX_CONSECUTIVE_FAILURES = 2;
+
+    // weight of the last sample in the moving averages
+    private static final double SMOOTHING = 0.3;
+    private static final long MAX_QUARANTINE_MILLIS = 600000;
+
+    public static class Mirror {
+        private final URI baseUri;
+        // moving averages, negative until the first sample
+        private double latencyMillis;
+        private double bytesPerMillis;
+        private int consecutiveFailures;
+        private long quarantinedUntil;
+        private int successes;
+        private int failures;
+
+        Mirror(URI baseUri) {
+            this.baseUri = baseUri;
+            this.latencyMillis = -1;
+            this.bytesPerMillis = -1;
+            this.consecutiveFailures = 0;
+            this.quarantinedUntil = 0;
+            this.successes = 0;
+            this.failures = 0;
+        }
+
+        public URI getBaseUri() {
+            return baseUri;
+        }
+
+        public double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public double getBytesPerSecond() {
+            return bytesPerMillis * 1000;
+        }
+
+        public int getSuccesses() {
+            return successes;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        boolean isHealthy(long now) {
+            return now >= quarantinedUntil;
+        }
+
+        /**
+         * Expected time to download a package of the given size, 0 when never measured
+         * so that every mirror gets a chance to be measured.
+         */
+        double expectedMillis(double bytes) {
+            if (latencyMillis < 0 || bytesPerMillis <= 0) {
+                return 0;
+            }
+            return latencyMillis + bytes / bytesPerMillis;
+        }
+    }
+
+    private final List<Mirror> mirrors;
+    private final long quarantineMillis;
+    // moving average of the package size, used to weigh latency against throughput
+    private double averageBytes;
+
+    public MirrorPool(List<URI> baseUris, long quarantineMillis) {
+        if (baseUris.isEmpty()) {
+            throw new IllegalArgumentException("At least one mirror is required");
+        }
+        this.mirrors = new ArrayList<>(baseUris.size());
+        for (URI baseUri : baseUris) {
+            mirrors.add(new Mirror(baseUri));
+        }
+        this.quarantineMillis = quarantineMillis;
+        this.averageBytes = -1;
+    }
+
+    private static double smooth(double average, double sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    public synchronized List<Mirror> getMirrors() {
+        return new ArrayList<>(mirrors);
+    }
+
+    /**
+     * Healthy mirrors from the fastest, followed by quarantined ones from the first to recover.
+     */
+    public synchronized List<Mirror> rank() {
+        final long now = System.currentTimeMillis();
+        final double bytes = Math.max(averageBytes, 0);
+        List<Mirror> ranked = new ArrayList<>(mirrors);
+        Collections.sort(ranked, new Comparator<Mirror>() {
+            @Override
+            public int compare(Mirror a, Mirror b) {
+                boolean aHealthy = a.isHealthy(now);
+                boolean bHealthy = b.isHealthy(now);
+                if (aHealthy != bHealthy) {
+                    return aHealthy ? -1 : 1;
+                }
+                if (!aHealthy) {
+                    return a.quarantinedUntil < b.quarantinedUntil ? -1 : (a.quarantinedUntil > b.quarantinedUntil ? 1 : 0);
+                }
+                return Double.compare(a.expectedMillis(bytes), b.expectedMillis(bytes));
+            }
+        });
+        return ranked;
+    }
+
+    public synchronized boolean isHealthy(Mirror mirror) {
+        return mirror.isHealthy(System.currentTimeMillis());
+    }
+
+    synchronized void recordSuccess(Mirror mirror, PackageDownloader.Result result) {
+        mirror.successes++;
+        mirror.consecutiveFailures = 0;
+        mirror.quarantinedUntil = 0;
+        if (result.getLatencyMillis() >= 0) {
+            mirror.latencyMillis = smooth(mirror.latencyMillis, result.getLatencyMillis());
+        }
+        long transferMillis = result.getElapsedMillis() - Math.max(result.getLatencyMillis(), 0);
+        if (result.getTransferred() > 0) {
+            mirror.bytesPerMillis = smooth(mirror.bytesPerMillis, (double) result.getTransferred() / Math.max(transferMillis, 1));
+            averageBytes = smooth(averageBytes, result.getTransferred());
+        }
+    }
+
+    synchronized void recordFailure(Mirror mirror) {
+        mirror.failures++;
+        mirror.consecutiveFailures++;
+        if (mirror.consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+            int exponent = Math.min(mirror.consecutiveFailures - MAX_CONSECUTIVE_FAILURES, 10);
+            long delay = Math.min(quarantineMillis << exponent, MAX_QUARANTINE_MILLIS);
+            mirror.quarantinedUntil = System.currentTimeMillis() + delay;
+        }
+    }
+
+    /**
+     * Downloads a package from the best mirror, trying the next ones when it fails.
+     *
+     * A mirror not having the package is not held against its health.
+     */
+    public PackageDownloader.Result download(PackageDownloader downloader, String packageName, File target, String md5)
+            throws IOException, SmuttyException {
+        Exception lastFailure = null;
+        for (Mirror mirror : rank()) {
+            try {
+                PackageDownloader.Result result = downloader.download(mirror.getBaseUri().resolve(packageName).toURL(), target, md5);
+                recordSuccess(mirror, result);
+                return result;
+            } catch (FileNotFoundException e) {
+                lastFailure = e;
+            } catch (IOException | SmuttyException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                recordFailure(mirror);
+                lastFailure = e;
+            }
+        }
+        if (lastFailure instanceof SmuttyException) {
+            throw (SmuttyException) lastFailure;
+        }
+        throw (IOException) lastFailure;
+    }
+}
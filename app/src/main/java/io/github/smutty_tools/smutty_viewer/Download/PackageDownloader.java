@@ -0,0 +1,311 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.smutty_tools.smutty_viewer.Exceptions.SmuttyException;
+import io.github.smutty_tools.smutty_viewer.Tools.CountingInputStream;
+import io.github.smutty_tools.smutty_viewer.Tools.DigestingOutputStream;
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Downloads a package into a temporary part file, resuming with http range requests
+ * after a dropped connection, and moves it into place once its md5 matches.
+ *
+ * The md5 is computed while the data is written, so a fresh download is never read back.
+ *
+ * Downloads of the same target are serialized across every downloader of the process, as
+ * the sync and the prefetcher may both want a package: the one which waited finds it in place.
+ */
+public class PackageDownloader {
+
+    public static final String PART_SUFFIX = ".part";
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Outcome of a successful download.
+     */
+    public static class Result {
+        private final long transferred;
+        private final long latencyMillis;
+        private final long elapsedMillis;
+
+        Result(long transferred, long latencyMillis, long elapsedMillis) {
+            this.transferred = transferred;
+            this.latencyMillis = latencyMillis;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Bytes received from the network, across attempts.
+         */
+        public long getTransferred() {
+            return transferred;
+        }
+
+        /**
+         * Time until the response headers of the first answered attempt.
+         */
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    /**
+     * State of one download across its attempts.
+     */
+    private static class Transfer {
+        final File partFile;
+        final MessageDigest digest;
+        // number of bytes at the start of the part file covered by the digest
+        long digested;
+        // number of bytes received from the network
+        long transferred;
+        // number of bytes read back from storage to rebuild the digest
+        long reread;
+        // time until the first response headers, -1 until then
+        long latencyMillis;
+
+        Transfer(File partFile, MessageDigest digest) {
+            this.partFile = partFile;
+            this.digest = digest;
+            this.digested = 0;
+            this.transferred = 0;
+            this.reread = 0;
+            this.latencyMillis = -1;
+        }
+
+        void restart() {
+            digest.reset();
+            digested = 0;
+        }
+
+        void catchUp(long existing) throws IOException {
+            if (digested == existing) {
+                return;
+            }
+            // the part file comes from a previous run, or a failed write: digest it again
+            restart();
+            InputStream inputStream = new FileInputStream(partFile);
+            try {
+                digested = Utils.UpdateDigest(digest, inputStream);
+                reread += digested;
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+    // targets whose part file is being written, by any downloader
+    private static final Set<File> activeTargets = new HashSet<>();
+
+    private final int attempts;
+    private final AtomicLong bytesTransferred;
+    private final AtomicLong bytesReread;
+
+    public PackageDownloader(int attempts) {
+        if (attempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required");
+        }
+        this.attempts = attempts;
+        this.bytesTransferred = new AtomicLong(0);
+        this.bytesReread = new AtomicLong(0);
+    }
+
+    public static File getPartFile(File target) {
+        return new File(target.getParentFile(), target.getName() + PART_SUFFIX);
+    }
+
+    public static boolean isPartFile(File file) {
+        return file.getName().endsWith(PART_SUFFIX);
+    }
+
+    /**
+     * @return whether another download of the target had to be waited for
+     */
+    private static boolean claim(File target) throws InterruptedIOException {
+        synchronized (activeTargets) {
+            boolean waited = false;
+            while (activeTargets.contains(target)) {
+                waited = true;
+                try {
+                    activeTargets.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the download of " + target);
+                }
+            }
+            activeTargets.add(target);
+            return waited;
+        }
+    }
+
+    private static void release(File target) {
+        synchronized (activeTargets) {
+            activeTargets.remove(target);
+            activeTargets.notifyAll();
+        }
+    }
+
+    /**
+     * @throws FileNotFoundException when the server does not have the package, without retrying
+     */
+    public Result download(URL url, File target, String md5) throws IOException, SmuttyException {
+        long start = System.currentTimeMillis();
+        File key = target.getAbsoluteFile();
+        // the other download only moves the file into place once its md5 matched
+        if (claim(key) && target.exists()) {
+            release(key);
+            return new Result(0, -1, System.currentTimeMillis() - start);
+        }
+        try {
+            return fetchVerified(url, target, md5, start);
+        } finally {
+            release(key);
+        }
+    }
+
+    private Result fetchVerified(URL url, File target, String md5, long start) throws IOException, SmuttyException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(Utils.HASH_MD5);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SmuttyException(e);
+        }
+        Transfer transfer = new Transfer(getPartFile(target), digest);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    fetch(url, transfer, start);
+                    break;
+                } catch (FileNotFoundException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (attempt >= attempts || Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                }
+            }
+            transfer.catchUp(transfer.partFile.length());
+        } finally {
+            bytesTransferred.addAndGet(transfer.transferred);
+            bytesReread.addAndGet(transfer.reread);
+        }
+        File partFile = transfer.partFile;
+        String partMd5 = Utils.ToHexString(digest.digest());
+        if (!partMd5.equalsIgnoreCase(md5)) {
+            partFile.delete();
+            throw new SmuttyException("Package file has invalid checksum");
+        }
+        if (!partFile.renameTo(target)) {
+            throw new IOException("Could not move " + partFile + " to " + target);
+        }
+        return new Result(transfer.transferred, transfer.latencyMillis, System.currentTimeMillis() - start);
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
+    }
+
+    /**
+     * Bytes read back from storage to compute checksums, only non zero when resuming
+     * part files left by a previous run.
+     */
+    public long getBytesReread() {
+        return bytesReread.get();
+    }
+
+    private static long parseContentRangeStart(String contentRange) {
+        // bytes <start>-<end>/<total>
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        if (dash == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void fetch(URL url, Transfer transfer, long start) throws IOException {
+        File partFile = transfer.partFile;
+        long existing = partFile.exists() ? partFile.length() : 0;
+        URLConnection urlConnection = url.openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        boolean append = false;
+        if (urlConnection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+            if (existing > 0) {
+                httpConnection.setRequestProperty("Range", "bytes=" + existing + "-");
+            }
+            int responseCode = httpConnection.getResponseCode();
+            if (transfer.latencyMillis == -1) {
+                transfer.latencyMillis = System.currentTimeMillis() - start;
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE) {
+                httpConnection.disconnect();
+                throw new FileNotFoundException("Server answered " + responseCode + " for " + url);
+            }
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                if (parseContentRangeStart(httpConnection.getHeaderField("Content-Range")) != existing) {
+                    httpConnection.disconnect();
+                    partFile.delete();
+                    transfer.restart();
+                    throw new IOException("Unexpected content range from " + url);
+                }
+                append = true;
+            } else if (responseCode == 416 && existing > 0) {
+                // range not satisfiable: the part file is already complete, or garbage
+                httpConnection.disconnect();
+                return;
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                httpConnection.disconnect();
+                throw new IOException("Server answered " + responseCode + " for " + url);
+            }
+        }
+        if (append) {
+            transfer.catchUp(existing);
+        } else {
+            transfer.restart();
+        }
+        long expected = urlConnection.getContentLength();
+        CountingInputStream inputStream = new CountingInputStream(urlConnection.getInputStream());
+        DigestingOutputStream outputStream = new DigestingOutputStream(new FileOutputStream(partFile, append), transfer.digest);
+        try {
+            Utils.Copy(inputStream, outputStream);
+        } finally {
+            outputStream.close();
+            inputStream.close();
+            transfer.transferred += inputStream.getCount();
+            transfer.digested += outputStream.getCount();
+        }
+        if (expected != -1 && outputStream.getCount() != expected) {
+            throw new IOException("Connection closed after " + outputStream.getCount() + " of " + expected + " bytes");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackage;
+
+/**
+ * Downloads in the background the packages following the content being viewed,
+ * in content id order, until the prefetch budget is covered.
+ *
+ * A single low priority thread does the work. Moving within the window being prefetched
+ * lets it continue, jumping elsewhere interrupts it: the package being downloaded keeps
+ * its part file, resumed when it is needed again.
+ */
+public class PrefetchScheduler {
+
+    public static final int DEFAULT_BUDGET_MBYTES = 100;
+    private static final long MBYTE = 1048576;
+    // upper bound of the packages looked up for one window
+    private static final int LOOKAHEAD_PACKAGES = 64;
+
+    /**
+     * Package lookups and downloads, separate from scheduling.
+     */
+    public interface Source {
+        /**
+         * Referenced packages of a content type from the one holding the id, or else following it, by ascending id.
+         */
+        List<SmuttyPackage> packagesFrom(String contentType, int contentId, int limit);
+
+        /**
+         * @return size of the stored package file, -1 when missing
+         */
+        long storedSize(String md5);
+
+        /**
+         * @return size of the downloaded package file
+         */
+        long fetch(SmuttyPackage pkg) throws Exception;
+    }
+
+    private final Source source;
+    private final long budgetBytes;
+    private final ExecutorService executor;
+    private Future<?> current;
+    private PrefetchJob currentJob;
+    // window of the current job, known once its packages were looked up
+    private String windowType;
+    private int windowMin;
+    private int windowMax;
+
+    public PrefetchScheduler(Source source, long budgetBytes) {
+        this.source = source;
+        this.budgetBytes = budgetBytes;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "prefetch");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.current = null;
+        this.currentJob = null;
+        this.windowType = null;
+    }
+
+    public static long parseBudget(String mbytes) {
+        try {
+            long budget = Long.parseLong(mbytes);
+            if (budget >= 0) {
+                return budget * MBYTE;
+            }
+        } catch (NumberFormatException e) {
+            // use default
+        }
+        return DEFAULT_BUDGET_MBYTES * MBYTE;
+    }
+
+    /**
+     * Called by the viewer whenever the content being displayed changes.
+     */
+    public synchronized void onPosition(String contentType, int contentId) {
+        if (budgetBytes == 0) {
+            return;
+        }
+        boolean running = current != null && !current.isDone();
+        if (running && contentType.equals(windowType) && contentId >= windowMin && contentId <= windowMax) {
+            return;
+        }
+        cancel();
+        windowType = contentType;
+        windowMin = contentId;
+        windowMax = contentId;
+        currentJob = new PrefetchJob(contentType, contentId);
+        current = executor.submit(currentJob);
+    }
+
+    public synchronized void cancel() {
+        if (current != null && !current.isDone()) {
+            // the flag outlives the interrupt, cleared by whoever catches it
+            currentJob.cancelled = true;
+            current.cancel(true);
+        }
+        current = null;
+        currentJob = null;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private synchronized void setWindowEnd(PrefetchJob job, int maxId) {
+        if (job.contentType.equals(windowType) && job.contentId == windowMin) {
+            windowMax = maxId;
+        }
+    }
+
+    private class PrefetchJob implements Runnable {
+
+        final String contentType;
+        final int contentId;
+        volatile boolean cancelled;
+
+        PrefetchJob(String contentType, int contentId) {
+            this.contentType = contentType;
+            this.contentId = contentId;
+            this.cancelled = false;
+        }
+
+        @Override
+        public void run() {
+            List<SmuttyPackage> packages = source.packagesFrom(contentType, contentId, LOOKAHEAD_PACKAGES);
+            if (packages.isEmpty()) {
+                return;
+            }
+            setWindowEnd(this, packages.get(packages.size() - 1).getMaxId());
+            long used = 0;
+            for (SmuttyPackage pkg : packages) {
+                if (used >= budgetBytes || cancelled) {
+                    return;
+                }
+                long size = source.storedSize(pkg.getMd5());
+                if (size >= 0) {
+                    used += size;
+                    continue;
+                }
+                try {
+                    used += source.fetch(pkg);
+                } catch (Exception e) {
+                    if (cancelled) {
+                        return;
+                    }
+                    // left for the viewer to fetch on demand
+                }
+            }
+        }
+    }
+}
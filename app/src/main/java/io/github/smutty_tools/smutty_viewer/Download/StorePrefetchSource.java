@@ -0,0 +1,97 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.github.smutty_tools.smutty_viewer.Data.AppDatabase;
+import io.github.smutty_tools.smutty_viewer.Data.IndexSource;
+import io.github.smutty_tools.smutty_viewer.Data.PackageCacheManager;
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackage;
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackageDao;
+import io.github.smutty_tools.smutty_viewer.Data.VerifiedFile;
+import io.github.smutty_tools.smutty_viewer.Store.PackageStore;
+
+/**
+ * Prefetch source backed by the database and the package store, downloading from
+ * the mirrors of the synchronized index sources.
+ */
+public class StorePrefetchSource implements PrefetchScheduler.Source {
+
+    private final AppDatabase appDatabase;
+    private final PackageStore packageStore;
+    private final PackageCacheManager cacheManager;
+    private final PackageDownloader packageDownloader;
+    private Set<URI> mirrorUris;
+    private MirrorPool mirrorPool;
+
+    public StorePrefetchSource(AppDatabase appDatabase, PackageStore packageStore, PackageCacheManager cacheManager) {
+        this.appDatabase = appDatabase;
+        this.packageStore = packageStore;
+        this.cacheManager = cacheManager;
+        this.packageDownloader = new PackageDownloader(PackageDownloader.DEFAULT_ATTEMPTS);
+        this.mirrorUris = null;
+        this.mirrorPool = null;
+    }
+
+    /**
+     * Mirrors are the directories of the index sources, from the fastest. The pool is built
+     * again once a sync changed the sources, keeping its statistics otherwise.
+     *
+     * @return null when there is no source to download from
+     */
+    private synchronized MirrorPool getMirrorPool() {
+        Set<URI> baseUris = new LinkedHashSet<>();
+        for (IndexSource source : appDatabase.indexSourceDao().getAll()) {
+            try {
+                baseUris.add(new URL(source.getUrl()).toURI().resolve("."));
+            } catch (MalformedURLException | URISyntaxException e) {
+                // ignore invalid source
+            }
+        }
+        if (!baseUris.equals(mirrorUris)) {
+            mirrorUris = baseUris;
+            mirrorPool = baseUris.isEmpty() ? null : new MirrorPool(new ArrayList<>(baseUris), MirrorPool.DEFAULT_QUARANTINE_MILLIS);
+        }
+        return mirrorPool;
+    }
+
+    @Override
+    public List<SmuttyPackage> packagesFrom(String contentType, int contentId, int limit) {
+        if (getMirrorPool() == null) {
+            // nothing to prefetch from
+            return new ArrayList<>();
+        }
+        SmuttyPackageDao pkgDao = appDatabase.smuttyPackageDao();
+        // both queries seek the range index instead of walking it from the first package
+        SmuttyPackage holder = pkgDao.findLastStartingAtOrBefore(contentType, contentId);
+        int minId = holder != null && holder.getMaxId() >= contentId ? holder.getMinId() : contentId;
+        return pkgDao.getFromMinId(contentType, minId, limit);
+    }
+
+    @Override
+    public long storedSize(String md5) {
+        File file = packageStore.getFile(md5);
+        return file.exists() ? file.length() : -1;
+    }
+
+    @Override
+    public long fetch(SmuttyPackage pkg) throws Exception {
+        MirrorPool pool = getMirrorPool();
+        if (pool == null) {
+            throw new IOException("No index source to download " + pkg.getPackageFile() + " from");
+        }
+        File outputFile = packageStore.prepareFile(pkg.getMd5());
+        pool.download(packageDownloader, pkg.getPackageFile(), outputFile, pkg.getMd5());
+        appDatabase.verifiedFileDao().insert(VerifiedFile.fromFile(outputFile, pkg.getMd5()));
+        cacheManager.recordStored(pkg.getMd5(), outputFile.length());
+        return outputFile.length();
+    }
+}
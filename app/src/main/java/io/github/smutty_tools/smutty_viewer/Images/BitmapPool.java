@@ -0,0 +1,77 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Mutable bitmaps released by views, reused as decoding targets.
+ *
+ * From KitKat a bitmap can be reconfigured to any size fitting its allocation, bitmaps are
+ * then bucketed by allocation size; before, only a bitmap of the exact size can be reused.
+ */
+public class BitmapPool {
+
+    private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private final BucketPool<Bitmap> pool;
+
+    public BitmapPool(long maxBytes) {
+        this.pool = new BucketPool<>(maxBytes);
+    }
+
+    private static boolean canReconfigure() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    private static long exactKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    public Bitmap.Config getConfig() {
+        return CONFIG;
+    }
+
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() != CONFIG) {
+            return;
+        }
+        long key;
+        long bytes;
+        if (canReconfigure()) {
+            bytes = bitmap.getAllocationByteCount();
+            key = ImageSizing.bucketOf(bytes);
+        } else {
+            bytes = bitmap.getByteCount();
+            key = exactKey(bitmap.getWidth(), bitmap.getHeight());
+        }
+        for (Bitmap dropped : pool.put(key, bitmap, bytes)) {
+            dropped.recycle();
+        }
+    }
+
+    /**
+     * @return a bitmap able to receive a decoded image of this size, null if none is pooled
+     */
+    public Bitmap take(int width, int height, int sampleSize) {
+        if (canReconfigure()) {
+            return pool.take(ImageSizing.bucketAtLeast(ImageSizing.byteCount(width, height, BYTES_PER_PIXEL)));
+        }
+        // older decoders only reuse bitmaps of images decoded at full size
+        return sampleSize == 1 ? pool.take(exactKey(width, height)) : null;
+    }
+
+    public void clear() {
+        for (Bitmap bitmap : pool.clear()) {
+            bitmap.recycle();
+        }
+    }
+
+    public int getHits() {
+        return pool.getHits();
+    }
+
+    public int getMisses() {
+        return pool.getMisses();
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reusable objects grouped by a bucket key, bounded in bytes: the oldest objects
+ * released are dropped first once over the budget.
+ */
+public class BucketPool<T> {
+
+    private static class Entry<T> {
+        final long key;
+        final T value;
+        final long bytes;
+
+        Entry(long key, T value, long bytes) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final Map<Long, ArrayDeque<Entry<T>>> buckets;
+    // every pooled entry, oldest first
+    private final ArrayDeque<Entry<T>> order;
+    private long bytes;
+    private int hits;
+    private int misses;
+    private int dropped;
+
+    public BucketPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.buckets = new HashMap<>();
+        this.order = new ArrayDeque<>();
+        this.bytes = 0;
+        this.hits = 0;
+        this.misses = 0;
+        this.dropped = 0;
+    }
+
+    /**
+     * @return the objects dropped to stay within the budget, for the caller to release
+     */
+    public synchronized ArrayDeque<T> put(long key, T value, long size) {
+        ArrayDeque<T> evicted = new ArrayDeque<>();
+        if (size > maxBytes) {
+            evicted.add(value);
+            dropped++;
+            return evicted;
+        }
+        Entry<T> entry = new Entry<>(key, value, size);
+        ArrayDeque<Entry<T>> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+        bucket.addLast(entry);
+        order.addLast(entry);
+        bytes += size;
+        while (bytes > maxBytes) {
+            Entry<T> oldest = order.pollFirst();
+            remove(oldest);
+            evicted.add(oldest.value);
+            dropped++;
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the most recently released object of the bucket, null if there is none
+     */
+    public synchronized T take(long key) {
+        ArrayDeque<Entry<T>> bucket = buckets.get(key);
+        if (bucket == null || bucket.isEmpty()) {
+            misses++;
+            return null;
+        }
+        Entry<T> entry = bucket.peekLast();
+        remove(entry);
+        Iterator<Entry<T>> iterator = order.descendingIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == entry) {
+                iterator.remove();
+                break;
+            }
+        }
+        hits++;
+        return entry.value;
+    }
+
+    private void remove(Entry<T> entry) {
+        ArrayDeque<Entry<T>> bucket = buckets.get(entry.key);
+        bucket.removeLastOccurrence(entry);
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.key);
+        }
+        bytes -= entry.bytes;
+    }
+
+    public synchronized ArrayDeque<T> clear() {
+        ArrayDeque<T> values = new ArrayDeque<>();
+        for (Entry<T> entry : order) {
+            values.add(entry.value);
+        }
+        order.clear();
+        buckets.clear();
+        bytes = 0;
+        return values;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getDropped() {
+        return dropped;
+    }
+}
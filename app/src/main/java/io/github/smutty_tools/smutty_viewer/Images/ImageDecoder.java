@@ -0,0 +1,228 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes images into views on a pool of background workers, downsampled to the view size
+ * and into pooled bitmaps.
+ *
+ * Loading an image into a view cancels the image previously requested for it, so that
+ * recycled views do not decode images scrolled off screen. Views are only touched from the
+ * main thread.
+ */
+public class ImageDecoder {
+
+    private static final String TAG = "ImageDecoder";
+
+    public static final int DEFAULT_WORKERS = 2;
+    private static final int MAX_ENCODED_BYTES = 32 * 1024 * 1024;
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private class Request implements Runnable {
+        final ImageView view;
+        final Source source;
+        final int targetWidth;
+        final int targetHeight;
+        volatile boolean cancelled = false;
+        Future<?> future = null;
+
+        Request(ImageView view, Source source, int targetWidth, int targetHeight) {
+            this.view = view;
+            this.source = source;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            final Bitmap bitmap;
+            try {
+                bitmap = decode(this);
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                Log.d(TAG, "Could not decode image: " + e.getMessage());
+                return;
+            }
+            if (bitmap == null) {
+                return;
+            }
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    display(Request.this, bitmap);
+                }
+            });
+        }
+    }
+
+    private final ExecutorService executor;
+    private final BitmapPool bitmapPool;
+    private final long maxBitmapBytes;
+    private final Handler handler;
+    // main thread state
+    private final WeakHashMap<ImageView, Request> requests;
+    private final WeakHashMap<ImageView, Bitmap> displayed;
+
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final AtomicInteger cancelledDecodes = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public ImageDecoder(int workers, BitmapPool bitmapPool, long maxBitmapBytes) {
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // keep the main thread responsive while decoding
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.bitmapPool = bitmapPool;
+        this.maxBitmapBytes = maxBitmapBytes;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.requests = new WeakHashMap<>();
+        this.displayed = new WeakHashMap<>();
+    }
+
+    /**
+     * Decodes the image into the view, replacing any image previously requested for it.
+     *
+     * @param targetWidth size to downsample to when the view is not laid out yet
+     */
+    public void load(ImageView view, Source source, int targetWidth, int targetHeight) {
+        cancel(view);
+        int width = view.getWidth() > 0 ? view.getWidth() : targetWidth;
+        int height = view.getHeight() > 0 ? view.getHeight() : targetHeight;
+        Request request = new Request(view, source, width, height);
+        requests.put(view, request);
+        request.future = executor.submit(request);
+    }
+
+    /**
+     * Stops the decode requested for the view and gives its bitmap back to the pool.
+     */
+    public void cancel(ImageView view) {
+        Request request = requests.remove(view);
+        if (request != null) {
+            request.cancelled = true;
+            if (request.future.cancel(false)) {
+                cancelledDecodes.incrementAndGet();
+            }
+        }
+        Bitmap bitmap = displayed.remove(view);
+        if (bitmap != null) {
+            view.setImageDrawable(null);
+            bitmapPool.release(bitmap);
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream, Request request) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16384];
+        try {
+            int count;
+            while (!request.cancelled && (count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+                if (outputStream.size() > MAX_ENCODED_BYTES) {
+                    throw new IOException("Encoded image larger than " + MAX_ENCODED_BYTES + " bytes");
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private Bitmap decode(Request request) throws IOException {
+        byte[] encoded = readFully(request.source.open(), request);
+        if (request.cancelled) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image");
+        }
+        int sample = ImageSizing.sampleSize(options.outWidth, options.outHeight, request.targetWidth, request.targetHeight,
+                BitmapPool.BYTES_PER_PIXEL, maxBitmapBytes);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        options.inPreferredConfig = bitmapPool.getConfig();
+        options.inMutable = true;
+        options.inBitmap = bitmapPool.take(ImageSizing.sampledDimension(options.outWidth, sample),
+                ImageSizing.sampledDimension(options.outHeight, sample), sample);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap did not fit after all
+            bitmapPool.release(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode image of " + options.outWidth + "x" + options.outHeight);
+        }
+        decoded.incrementAndGet();
+        return bitmap;
+    }
+
+    private void display(Request request, Bitmap bitmap) {
+        if (request.cancelled || requests.get(request.view) != request) {
+            bitmapPool.release(bitmap);
+            return;
+        }
+        requests.remove(request.view);
+        Bitmap previous = displayed.put(request.view, bitmap);
+        request.view.setImageBitmap(bitmap);
+        if (previous != null && previous != bitmap) {
+            bitmapPool.release(previous);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        bitmapPool.clear();
+    }
+
+    public int getDecoded() {
+        return decoded.get();
+    }
+
+    public int getCancelled() {
+        return cancelledDecodes.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+}
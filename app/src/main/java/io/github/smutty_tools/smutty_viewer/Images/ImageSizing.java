@@ -0,0 +1,63 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+/**
+ * Downsampling arithmetic, independent of the Android bitmap classes.
+ */
+public class ImageSizing {
+
+    /**
+     * @return the largest power of two subsampling keeping the image at least as large as the target,
+     * and its decoded size within {@code maxBytes}
+     */
+    public static int sampleSize(int width, int height, int targetWidth, int targetHeight, int bytesPerPixel, long maxBytes) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        int sample = 1;
+        if (targetWidth > 0 && targetHeight > 0) {
+            while (width / (sample * 2) >= targetWidth && height / (sample * 2) >= targetHeight) {
+                sample *= 2;
+            }
+        }
+        // images far larger than the screen could still not fit in memory
+        while (byteCount(sampledDimension(width, sample), sampledDimension(height, sample), bytesPerPixel) > maxBytes
+                && (width / sample > 1 || height / sample > 1)) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    public static int sampledDimension(int dimension, int sample) {
+        return (dimension + sample - 1) / sample;
+    }
+
+    /**
+     * @return the dimension once the image is scaled down to fit a square of {@code maxSize}, keeping its aspect ratio
+     */
+    public static int fitDimension(int dimension, int width, int height, int maxSize) {
+        int largest = Math.max(width, height);
+        if (largest <= maxSize) {
+            return dimension;
+        }
+        return Math.max(1, (int) ((long) dimension * maxSize / largest));
+    }
+
+    public static long byteCount(int width, int height, int bytesPerPixel) {
+        return (long) width * height * bytesPerPixel;
+    }
+
+    /**
+     * Bucket holding the buffers of at least this size, a power of two.
+     */
+    public static long bucketAtLeast(long bytes) {
+        long bucket = Long.highestOneBit(Math.max(1, bytes));
+        return bucket == bytes ? bucket : bucket << 1;
+    }
+
+    /**
+     * Bucket of a buffer of this size: every buffer of the bucket is at least the bucket size.
+     */
+    public static long bucketOf(long bytes) {
+        return Long.highestOneBit(Math.max(1, bytes));
+    }
+}
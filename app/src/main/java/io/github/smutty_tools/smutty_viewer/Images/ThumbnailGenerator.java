@@ -0,0 +1,155 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.smutty_tools.smutty_viewer.Data.ContentItem;
+import io.github.smutty_tools.smutty_viewer.Store.ThumbnailAtlas;
+import io.github.smutty_tools.smutty_viewer.Store.ThumbnailAtlasWriter;
+
+/**
+ * Fetches the image of every item of a package and packs small JPEG thumbnails of them
+ * into a {@link ThumbnailAtlas}. Shared by the download workers.
+ */
+public class ThumbnailGenerator {
+
+    private static final String TAG = "ThumbnailGenerator";
+
+    public static final int DEFAULT_SIZE = 128;
+    public static final int DEFAULT_QUALITY = 80;
+    private static final int MAX_ENCODED_BYTES = 32 * 1024 * 1024;
+    // thumbnails have no alpha, half the memory of the default config while decoding
+    private static final int BYTES_PER_PIXEL = 2;
+    private static final long MAX_DECODED_BYTES = 16 * 1024 * 1024;
+
+    private final int size;
+    private final int quality;
+    private final AtomicInteger generated = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong generateMillis = new AtomicLong();
+
+    /**
+     * @param size largest side of the thumbnails, in pixels
+     * @param quality JPEG quality of the thumbnails
+     */
+    public ThumbnailGenerator(int size, int quality) {
+        this.size = size;
+        this.quality = quality;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16384];
+        try {
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+                if (outputStream.size() > MAX_ENCODED_BYTES) {
+                    throw new IOException("Encoded image larger than " + MAX_ENCODED_BYTES + " bytes");
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private void thumbnail(byte[] encoded, ByteArrayOutputStream outputStream) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image");
+        }
+        int width = options.outWidth;
+        int height = options.outHeight;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = ImageSizing.sampleSize(width, height, size, size, BYTES_PER_PIXEL, MAX_DECODED_BYTES);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        if (sampled == null) {
+            throw new IOException("Could not decode image of " + width + "x" + height);
+        }
+        Bitmap scaled = sampled;
+        try {
+            // the sampled image is up to twice the thumbnail size
+            int sampledWidth = sampled.getWidth();
+            int sampledHeight = sampled.getHeight();
+            scaled = Bitmap.createScaledBitmap(sampled, ImageSizing.fitDimension(sampledWidth, sampledWidth, sampledHeight, size),
+                    ImageSizing.fitDimension(sampledHeight, sampledWidth, sampledHeight, size), true);
+            if (!scaled.compress(Bitmap.CompressFormat.JPEG, quality, outputStream)) {
+                throw new IOException("Could not encode thumbnail");
+            }
+        } finally {
+            if (scaled != sampled) {
+                scaled.recycle();
+            }
+            sampled.recycle();
+        }
+    }
+
+    /**
+     * Writes the thumbnails of the items having an image into the atlas file. Items whose
+     * image cannot be fetched or decoded are skipped. The atlas is written even when every
+     * item failed, empty, so that later syncs do not fetch every image of the package again:
+     * the items are shown through their full size image.
+     *
+     * @return number of thumbnails in the atlas
+     */
+    public int generate(List<ContentItem> items, File atlasFile) throws IOException {
+        long start = System.currentTimeMillis();
+        ThumbnailAtlasWriter writer = new ThumbnailAtlasWriter(atlasFile);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int failures = 0;
+        try {
+            for (ContentItem item : items) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Thumbnail generation cancelled");
+                }
+                if (item.getUrl() == null) {
+                    continue;
+                }
+                outputStream.reset();
+                try {
+                    thumbnail(readFully(new UrlImageSource(item.getUrl()).open()), outputStream);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    failures++;
+                    Log.d(TAG, "No thumbnail for " + item.getUrl() + ": " + e.getMessage());
+                    continue;
+                }
+                writer.add(item.getId(), outputStream.toByteArray(), 0, outputStream.size());
+            }
+            failed.addAndGet(failures);
+            int count = writer.commit();
+            generated.addAndGet(count);
+            return count;
+        } finally {
+            writer.abort();
+            generateMillis.addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    public int getGenerated() {
+        return generated.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public long getGenerateMillis() {
+        return generateMillis.get();
+    }
+}
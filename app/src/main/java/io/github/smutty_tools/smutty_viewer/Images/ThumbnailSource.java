@@ -0,0 +1,38 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.smutty_tools.smutty_viewer.Store.MappedFilePool;
+import io.github.smutty_tools.smutty_viewer.Store.ThumbnailAtlas;
+
+/**
+ * Image of a package item read from the thumbnail atlas of its package, or from its url
+ * when the package has no thumbnail for it.
+ */
+public class ThumbnailSource implements ImageDecoder.Source {
+
+    private final MappedFilePool mappedFilePool;
+    private final File atlasFile;
+    private final int id;
+    private final String url;
+
+    public ThumbnailSource(MappedFilePool mappedFilePool, File atlasFile, int id, String url) {
+        this.mappedFilePool = mappedFilePool;
+        this.atlasFile = atlasFile;
+        this.id = id;
+        this.url = url;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        if (atlasFile.exists()) {
+            InputStream inputStream = ThumbnailAtlas.open(mappedFilePool, atlasFile).open(id);
+            if (inputStream != null) {
+                return inputStream;
+            }
+        }
+        return new UrlImageSource(url).open();
+    }
+}
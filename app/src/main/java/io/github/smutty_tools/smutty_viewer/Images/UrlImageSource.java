@@ -0,0 +1,34 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Image referenced by the url of a package item.
+ */
+public class UrlImageSource implements ImageDecoder.Source {
+
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    private final String url;
+
+    public UrlImageSource(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+        urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(TIMEOUT_MILLIS);
+        int responseCode = urlConnection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            urlConnection.disconnect();
+            throw new IOException("Image " + url + " answered " + responseCode);
+        }
+        return new BufferedInputStream(urlConnection.getInputStream());
+    }
+}
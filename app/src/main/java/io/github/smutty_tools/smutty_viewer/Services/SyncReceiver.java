@@ -0,0 +1,25 @@
+package io.github.smutty_tools.smutty_viewer.Services;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.ContextCompat;
+
+/**
+ * Starts the scheduled syncs, and schedules them again once the device booted.
+ */
+public class SyncReceiver extends BroadcastReceiver {
+
+    static final String ACTION_ALARM = "io.github.smutty_tools.smutty_viewer.action.SYNC_ALARM";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            SyncScheduler.ensureScheduled(context);
+        } else if (ACTION_ALARM.equals(intent.getAction())) {
+            // background services can only be started in the foreground since Android O
+            ContextCompat.startForegroundService(context,
+                    new Intent(context, SyncService.class).setAction(SyncService.ACTION_SCHEDULED_SYNC));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.smutty_tools.smutty_viewer.Services;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+/**
+ * Periodic syncs at the frequency of the {@code sync_frequency} setting, through inexact
+ * repeating alarms which the system batches with those of other applications.
+ *
+ * Alarms do not survive a reboot, {@link SyncReceiver} schedules them again.
+ */
+public class SyncScheduler {
+
+    public static final String DEFAULT_SYNC_FREQUENCY = "180";
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    /**
+     * @return interval between syncs, -1 when syncs are not scheduled
+     */
+    public static long parseIntervalMillis(String minutes) {
+        long value;
+        try {
+            value = Long.parseLong(minutes);
+        } catch (NumberFormatException e) {
+            value = Long.parseLong(DEFAULT_SYNC_FREQUENCY);
+        }
+        return value > 0 ? value * MINUTE_MILLIS : -1;
+    }
+
+    private static PendingIntent getAlarmIntent(Context context, int flags) {
+        Intent intent = new Intent(context, SyncReceiver.class).setAction(SyncReceiver.ACTION_ALARM);
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    /**
+     * Schedules syncs unless they already are, keeping the time of the next one.
+     */
+    public static void ensureScheduled(Context context) {
+        if (getAlarmIntent(context, PendingIntent.FLAG_NO_CREATE) == null) {
+            reschedule(context);
+        }
+    }
+
+    /**
+     * Schedules syncs from now on at the current frequency, or stops them.
+     */
+    public static void reschedule(Context context) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        long intervalMillis = parseIntervalMillis(settings.getString("sync_frequency", DEFAULT_SYNC_FREQUENCY));
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return;
+        }
+        PendingIntent alarmIntent = getAlarmIntent(context, PendingIntent.FLAG_UPDATE_CURRENT);
+        if (intervalMillis < 0) {
+            alarmManager.cancel(alarmIntent);
+            alarmIntent.cancel();
+            return;
+        }
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + intervalMillis,
+                intervalMillis, alarmIntent);
+    }
+}
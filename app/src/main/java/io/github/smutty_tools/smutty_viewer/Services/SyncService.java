@@ -0,0 +1,356 @@
+package io.github.smutty_tools.smutty_viewer.Services;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import io.github.smutty_tools.smutty_viewer.Activities.MainActivity;
+import io.github.smutty_tools.smutty_viewer.Data.AppDatabase;
+import io.github.smutty_tools.smutty_viewer.Data.PackageCacheManager;
+import io.github.smutty_tools.smutty_viewer.Download.DownloadScheduler;
+import io.github.smutty_tools.smutty_viewer.R;
+import io.github.smutty_tools.smutty_viewer.Store.PackageStore;
+import io.github.smutty_tools.smutty_viewer.Tools.LogEntry;
+import io.github.smutty_tools.smutty_viewer.Tools.LogProgressBundle;
+import io.github.smutty_tools.smutty_viewer.Tools.Logger.Level;
+
+/**
+ * Runs syncs in the foreground, outside of the lifecycle of the activities, which bind
+ * to it to follow their progress.
+ *
+ * A sync killed along with the process is started again by the system from the same
+ * intent, and resumes from the checkpoints of its sources.
+ */
+public class SyncService extends Service implements SyncTask.Listener {
+
+    public interface Client {
+        void onSyncProgress(LogProgressBundle bundle);
+
+        void onSyncFinished(SyncTask task);
+    }
+
+    public class LocalBinder extends Binder {
+        public SyncService getService() {
+            return SyncService.this;
+        }
+    }
+
+    public static final String ACTION_SYNC = "io.github.smutty_tools.smutty_viewer.action.SYNC";
+    public static final String ACTION_SCHEDULED_SYNC = "io.github.smutty_tools.smutty_viewer.action.SCHEDULED_SYNC";
+    public static final String ACTION_CANCEL = "io.github.smutty_tools.smutty_viewer.action.CANCEL_SYNC";
+
+    private static final String TAG = "SyncService";
+    private static final String CHANNEL_ID = "sync";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long NOTIFICATION_INTERVAL_MILLIS = 1000;
+    private static final int HISTORY_SIZE = 500;
+    private static final String DEFAULT_SCRUB_FREQUENCY = "30";
+    private static final String LAST_SCRUB_TIME = "last_scrub_time";
+
+    private final IBinder binder = new LocalBinder();
+    private Handler handler = null;
+    private SharedPreferences settings = null;
+    // main thread state
+    private final ArrayDeque<LogEntry> history = new ArrayDeque<>();
+    private Client client = null;
+    private SyncTask task = null;
+    private Thread thread = null;
+    private PowerManager.WakeLock wakeLock = null;
+    private NotificationCompat.Builder notificationBuilder = null;
+    private long lastNotification = 0;
+    private int lastStartId = 0;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        handler = new Handler(Looper.getMainLooper());
+        settings = PreferenceManager.getDefaultSharedPreferences(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.sync_notification_channel), NotificationManager.IMPORTANCE_LOW));
+        }
+    }
+
+    public static String[] parseIndexUrls(String value) {
+        Set<String> indexUrls = new LinkedHashSet<>();
+        if (value != null) {
+            for (String indexUrl : value.trim().split("\\s+")) {
+                if (indexUrl.length() > 0) {
+                    indexUrls.add(indexUrl);
+                }
+            }
+        }
+        return indexUrls.toArray(new String[indexUrls.size()]);
+    }
+
+    private NetworkInfo getActiveNetworkInfo() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return null;
+        }
+        return connectivityManager.getActiveNetworkInfo();
+    }
+
+    /**
+     * @return why the sync cannot run now, null if it can
+     */
+    private String checkConditions(boolean scheduled, String[] indexUrls) {
+        if (indexUrls.length == 0) {
+            return "Sync URL not provided";
+        }
+        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            return "External storage not available for writing";
+        }
+        // manual syncs are checked by the activity, with feedback to the user
+        if (scheduled) {
+            NetworkInfo ni = getActiveNetworkInfo();
+            if (ni == null || !ni.isConnected()) {
+                return getString(R.string.toast_network_unavailable);
+            }
+            if (settings.getBoolean("sync_only_on_wifi", false) && ni.getType() != ConnectivityManager.TYPE_WIFI) {
+                return "Synchronization allowed only on wifi";
+            }
+        }
+        return null;
+    }
+
+    private boolean isFullScrubDue() {
+        int scrubDays;
+        try {
+            scrubDays = Integer.parseInt(settings.getString("scrub_frequency", DEFAULT_SCRUB_FREQUENCY));
+        } catch (NumberFormatException e) {
+            scrubDays = Integer.parseInt(DEFAULT_SCRUB_FREQUENCY);
+        }
+        if (scrubDays < 0) {
+            return false;
+        }
+        long lastScrub = settings.getLong(LAST_SCRUB_TIME, 0);
+        return System.currentTimeMillis() - lastScrub >= scrubDays * DateUtils.DAY_IN_MILLIS;
+    }
+
+    private NotificationCompat.Builder createNotificationBuilder() {
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
+        PendingIntent cancelIntent = PendingIntent.getService(this, 0,
+                new Intent(this, SyncService.class).setAction(ACTION_CANCEL), 0);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(R.string.sync_notification_title))
+                .setContentIntent(contentIntent)
+                .addAction(android.R.drawable.ic_menu_close_clear_cancel, getString(R.string.sync_notification_cancel), cancelIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setProgress(0, 0, true);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        lastStartId = startId;
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_CANCEL.equals(action)) {
+            cancel();
+            stopIfIdle();
+            return START_NOT_STICKY;
+        }
+        // services started in the foreground have to show their notification right away
+        if (notificationBuilder == null) {
+            notificationBuilder = createNotificationBuilder();
+        }
+        startForeground(NOTIFICATION_ID, notificationBuilder.build());
+        if (task != null) {
+            publish(new LogEntry(Level.INFO, "Sync index already running"));
+            return START_REDELIVER_INTENT;
+        }
+        String[] indexUrls = parseIndexUrls(settings.getString("sync_url", null));
+        String reason = checkConditions(ACTION_SCHEDULED_SYNC.equals(action), indexUrls);
+        if (reason != null) {
+            publish(new LogEntry(Level.WARNING, "Sync index skipped: " + reason));
+            stopIfIdle();
+            return START_NOT_STICKY;
+        }
+        if ((flags & START_FLAG_REDELIVERY) != 0) {
+            publish(new LogEntry(Level.INFO, "Resuming sync index interrupted by the system"));
+        }
+        start(indexUrls);
+        return START_REDELIVER_INTENT;
+    }
+
+    private void start(String[] indexUrls) {
+        int downloadParallelism = DownloadScheduler.parseParallelism(settings.getString("download_threads", null));
+        File storageDirectory = new File(Environment.getExternalStorageDirectory(), MainActivity.DIRECTORY_MAIN);
+        PackageStore packageStore = new PackageStore(new File(storageDirectory, MainActivity.SUB_DIRECTORY_INDEX), PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        long storageQuotaBytes = PackageCacheManager.parseQuota(settings.getString("storage_mbytes", null));
+        File decodedDirectory = new File(storageDirectory, MainActivity.SUB_DIRECTORY_DECODED);
+        final SyncTask syncTask = new SyncTask(this, indexUrls, AppDatabase.getInstance(this), packageStore, decodedDirectory, getCacheDir(),
+                downloadParallelism, storageQuotaBytes, isFullScrubDue(), settings.getBoolean("generate_thumbnails", false));
+        // keeps the cpu running with the screen off, the sync being in the foreground
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+        wakeLock.acquire();
+        task = syncTask;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                syncTask.run();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finished(syncTask);
+                    }
+                });
+            }
+        }, TAG);
+        thread.start();
+    }
+
+    @Override
+    public void onProgress(final LogProgressBundle bundle) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(bundle);
+                updateNotification(bundle);
+            }
+        });
+    }
+
+    /**
+     * Messages of the service itself, without progress.
+     */
+    private void publish(LogEntry entry) {
+        deliver(new LogProgressBundle(entry, 0, 0));
+    }
+
+    private void deliver(LogProgressBundle bundle) {
+        LogEntry entry = bundle.logEntry;
+        // debug messages are only useful while they are followed
+        if (entry != null && entry.level <= Level.INFO) {
+            if (history.size() == HISTORY_SIZE) {
+                history.removeFirst();
+            }
+            history.addLast(entry);
+            if (client == null) {
+                Log.i(TAG, entry.message);
+            }
+        }
+        if (client != null) {
+            client.onSyncProgress(bundle);
+        }
+    }
+
+    private void updateNotification(LogProgressBundle bundle) {
+        long now = System.currentTimeMillis();
+        if (notificationBuilder == null || task == null || now - lastNotification < NOTIFICATION_INTERVAL_MILLIS) {
+            return;
+        }
+        lastNotification = now;
+        if (bundle.logEntry != null && bundle.logEntry.level <= Level.INFO) {
+            notificationBuilder.setContentText(bundle.logEntry.message);
+        }
+        notificationBuilder.setProgress(bundle.maxProgress, bundle.progress, false);
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+    }
+
+    private void finished(SyncTask syncTask) {
+        if (syncTask != task) {
+            return;
+        }
+        if (syncTask.isFullScrub() && syncTask.isCompleted()) {
+            settings.edit().putLong(LAST_SCRUB_TIME, System.currentTimeMillis()).apply();
+        }
+        publish(syncTask.isCancelled() ? new LogEntry(Level.WARNING, "Sync index cancelled") : new LogEntry(Level.INFO, "Sync index finished"));
+        task = null;
+        thread = null;
+        if (wakeLock != null) {
+            wakeLock.release();
+            wakeLock = null;
+        }
+        if (client != null) {
+            client.onSyncFinished(syncTask);
+        }
+        stopIfIdle();
+    }
+
+    private void stopIfIdle() {
+        if (task != null) {
+            return;
+        }
+        stopForeground(true);
+        notificationBuilder = null;
+        // the service stays alive while activities are bound to it
+        stopSelf(lastStartId);
+    }
+
+    /**
+     * Stops the running sync, which keeps its checkpoints.
+     */
+    public void cancel() {
+        if (task == null || task.isCancelled()) {
+            return;
+        }
+        publish(new LogEntry(Level.INFO, "Canceling sync index"));
+        task.cancel();
+        // stops the transfers in progress
+        thread.interrupt();
+    }
+
+    public boolean isRunning() {
+        return task != null;
+    }
+
+    /**
+     * Replays the messages of the current or last sync to the client, then forwards the following ones.
+     */
+    public void setClient(Client client) {
+        this.client = client;
+        if (client != null) {
+            for (LogEntry entry : history) {
+                client.onSyncProgress(new LogProgressBundle(entry, 0, 0));
+            }
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        // only happens while idle, unless the system reclaims the service
+        if (task != null) {
+            task.cancel();
+            thread.interrupt();
+        }
+        if (wakeLock != null) {
+            wakeLock.release();
+            wakeLock = null;
+        }
+        super.onDestroy();
+    }
+}
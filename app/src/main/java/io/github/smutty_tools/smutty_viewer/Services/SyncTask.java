@@ -0,0 +1,623 @@
+package io.github.smutty_tools.smutty_viewer.Services;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.smutty_tools.smutty_viewer.Data.AppDatabase;
+import io.github.smutty_tools.smutty_viewer.Data.ContentItem;
+import io.github.smutty_tools.smutty_viewer.Data.IndexDiff;
+import io.github.smutty_tools.smutty_viewer.Data.IndexReader;
+import io.github.smutty_tools.smutty_viewer.Data.IndexSource;
+import io.github.smutty_tools.smutty_viewer.Data.IndexSourceDao;
+import io.github.smutty_tools.smutty_viewer.Data.PackageCacheManager;
+import io.github.smutty_tools.smutty_viewer.Data.PackageWriteBuffer;
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackage;
+import io.github.smutty_tools.smutty_viewer.Data.TagIndex;
+import io.github.smutty_tools.smutty_viewer.Data.VerificationCache;
+import io.github.smutty_tools.smutty_viewer.Decompress.Decompressor;
+import io.github.smutty_tools.smutty_viewer.Download.DownloadScheduler;
+import io.github.smutty_tools.smutty_viewer.Download.IndexCache;
+import io.github.smutty_tools.smutty_viewer.Download.MirrorPool;
+import io.github.smutty_tools.smutty_viewer.Download.PackageDownloader;
+import io.github.smutty_tools.smutty_viewer.Exceptions.SmuttyException;
+import io.github.smutty_tools.smutty_viewer.Images.ThumbnailGenerator;
+import io.github.smutty_tools.smutty_viewer.Store.DecodedPackageCache;
+import io.github.smutty_tools.smutty_viewer.Store.PackageStore;
+import io.github.smutty_tools.smutty_viewer.Store.ThumbnailAtlas;
+import io.github.smutty_tools.smutty_viewer.Tools.CompletionWatermark;
+import io.github.smutty_tools.smutty_viewer.Tools.CountingInputStream;
+import io.github.smutty_tools.smutty_viewer.Tools.LogEntry;
+import io.github.smutty_tools.smutty_viewer.Tools.LogProgressBundle;
+import io.github.smutty_tools.smutty_viewer.Tools.Logger.Level;
+import io.github.smutty_tools.smutty_viewer.Tools.Md5Set;
+
+/**
+ * Synchronizes the packages of the index urls, run by the {@link SyncService}.
+ *
+ * Progress through each index is checkpointed in its source, so that a sync interrupted
+ * by a cancel or by the death of the process skips the packages already processed when it
+ * is run again on the same index copy.
+ */
+public class SyncTask implements Runnable {
+
+    public interface Listener {
+        /**
+         * Called from the sync threads.
+         */
+        void onProgress(LogProgressBundle bundle);
+    }
+
+    public static final String TAG = "SyncTask";
+
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    /**
+     * Index source along with the copy of its index fetched for this sync.
+     */
+    private static class FetchedSource {
+        final IndexSource source;
+        final IndexCache.FetchResult result;
+        // leading packages processed by an interrupted sync of the same copy
+        final int resumeFrom;
+
+        FetchedSource(IndexSource source, IndexCache.FetchResult result, int resumeFrom) {
+            this.source = source;
+            this.result = result;
+            this.resumeFrom = resumeFrom;
+        }
+    }
+
+    /**
+     * Packages of the store, candidates for eviction when over quota.
+     */
+    private static class StoredPackages {
+        final List<String> md5s = new ArrayList<>();
+        long[] sizes = new long[1024];
+        long totalBytes = 0;
+
+        void add(String md5, long size) {
+            if (md5s.size() == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length << 1);
+            }
+            sizes[md5s.size()] = size;
+            md5s.add(md5);
+            totalBytes += size;
+        }
+    }
+
+    private Listener listener;
+    private String[] indexUrls;
+    private AppDatabase appDatabase;
+    private PackageStore packageStore;
+    private File decodedDirectory;
+    private DecodedPackageCache decodedCache;
+    private File cacheDirectory;
+    private int downloadParallelism;
+    private volatile DownloadScheduler downloadScheduler;
+    private PackageDownloader packageDownloader;
+    private MirrorPool mirrorPool;
+    private IndexDiff indexDiff;
+    private IndexCache indexCache;
+    private VerificationCache verificationCache;
+    private PackageCacheManager cacheManager;
+    private TagIndex tagIndex;
+    private ThumbnailGenerator thumbnailGenerator;
+    private long storageQuotaBytes;
+    private boolean fullScrub;
+    private AtomicLong totalBytes;
+    private volatile int progress;
+    private volatile int maximumProgress;
+    private volatile boolean cancelled;
+    private boolean completed;
+
+    public SyncTask(Listener listener, String[] indexUrls, AppDatabase appDatabase, PackageStore packageStore, File decodedDirectory, File cacheDirectory, int downloadParallelism, long storageQuotaBytes, boolean fullScrub, boolean generateThumbnails) {
+        this.listener = listener;
+        this.indexUrls = indexUrls;
+        this.appDatabase = appDatabase;
+        this.packageStore = packageStore;
+        this.decodedDirectory = decodedDirectory;
+        this.decodedCache = null;
+        this.cacheDirectory = cacheDirectory;
+        this.downloadParallelism = downloadParallelism;
+        this.downloadScheduler = null;
+        this.packageDownloader = new PackageDownloader(PackageDownloader.DEFAULT_ATTEMPTS);
+        this.mirrorPool = null;
+        this.indexDiff = null;
+        this.indexCache = new IndexCache(cacheDirectory);
+        this.verificationCache = null;
+        this.cacheManager = null;
+        this.tagIndex = null;
+        this.thumbnailGenerator = generateThumbnails ? new ThumbnailGenerator(ThumbnailGenerator.DEFAULT_SIZE, ThumbnailGenerator.DEFAULT_QUALITY) : null;
+        this.storageQuotaBytes = storageQuotaBytes;
+        this.fullScrub = fullScrub;
+        this.totalBytes = new AtomicLong(0);
+        this.progress = 0;
+        this.maximumProgress = 1;
+        this.cancelled = false;
+        this.completed = false;
+    }
+
+    private void publishMessage(int level, Object... objects) {
+        LogEntry logEntry = new LogEntry(level, TextUtils.join(" ", objects));
+        listener.onProgress(new LogProgressBundle(logEntry, progress, maximumProgress));
+    }
+
+    /**
+     * Stops the sync between two packages, the thread running it should also be interrupted
+     * to stop the transfers in progress.
+     */
+    public void cancel() {
+        cancelled = true;
+        DownloadScheduler scheduler = downloadScheduler;
+        if (scheduler != null) {
+            scheduler.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return whether every index was processed, without errors
+     */
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return whether a verified copy of the package is in the store
+     */
+    private boolean downloadPackage(String packageName, String hash) throws IOException, SmuttyException {
+        File outputFile = packageStore.prepareFile(hash);
+        if (verificationCache.isValid(outputFile, hash)) {
+            publishMessage(Level.DEBUG, "File " + packageName + " exists with valid hash");
+        } else {
+            long reservation = cacheManager.reserve(hash);
+            if (reservation < 0) {
+                publishMessage(Level.DEBUG, "File " + packageName + " not fetched, storage quota");
+                return false;
+            }
+            try {
+                // resumes a previous partial download if any, checks the md5 before moving the file in place,
+                // from the fastest healthy mirror first
+                mirrorPool.download(packageDownloader, packageName, outputFile, hash);
+                publishMessage(Level.DEBUG, "File " + packageName + " downloaded");
+                verificationCache.markVerified(outputFile, hash);
+                cacheManager.recordStored(hash, outputFile.length());
+            } finally {
+                cacheManager.release(reservation);
+            }
+        }
+        totalBytes.addAndGet(outputFile.length());
+        return true;
+    }
+
+    private void indexTags(SmuttyPackage pkg) throws InterruptedIOException {
+        if (tagIndex.isIndexed(pkg.getMd5())) {
+            return;
+        }
+        try {
+            int tags = tagIndex.index(pkg, packageStore.getFile(pkg.getMd5()));
+            publishMessage(Level.DEBUG, "Indexed", tags, "tags of", pkg.getPackageFile());
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            // the package itself is valid, only its tags cannot be filtered on: its content will not change
+            publishMessage(Level.WARNING, "Could not index tags of", pkg.getPackageFile(), ":", e.getMessage());
+            tagIndex.markFailed(pkg);
+        }
+    }
+
+    /**
+     * Packs thumbnails of the items of an image package next to it, once per package.
+     */
+    private void generateThumbnails(SmuttyPackage pkg) throws InterruptedIOException {
+        File atlasFile = packageStore.getThumbnailFile(pkg.getMd5());
+        if (atlasFile.exists()) {
+            return;
+        }
+        try {
+            List<ContentItem> items = ContentItem.readItems(Decompressor.streamXz(new FileInputStream(packageStore.getFile(pkg.getMd5()))));
+            int count = thumbnailGenerator.generate(items, atlasFile);
+            publishMessage(Level.DEBUG, "Generated", count, "thumbnails of", items.size(), "items of", pkg.getPackageFile());
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            // items are still shown, through their full size image
+            publishMessage(Level.WARNING, "Could not generate thumbnails of", pkg.getPackageFile(), ":", e.getMessage());
+        }
+    }
+
+    private void processPackage(SmuttyPackage pkg) throws IOException, SmuttyException {
+        if (!downloadPackage(pkg.getPackageFile(), pkg.getMd5())) {
+            return;
+        }
+        if (pkg.isHasTags()) {
+            indexTags(pkg);
+        }
+        if (thumbnailGenerator != null && SmuttyPackage.CONTENT_TYPE_IMAGE.equals(pkg.getContentType())) {
+            generateThumbnails(pkg);
+        }
+    }
+
+    /**
+     * Accounts for a package processed before the sync was interrupted, without checking it again.
+     */
+    private void accountProcessed(SmuttyPackage pkg) {
+        File file = packageStore.getFile(pkg.getMd5());
+        if (file.exists()) {
+            totalBytes.addAndGet(file.length());
+        }
+    }
+
+    private void saveCheckpoint(FetchedSource fetched, int position) {
+        IndexCache.FetchResult result = fetched.result;
+        // without validators, the index copy could not be recognized when resuming
+        if (position == 0 || (result.etag == null && result.lastModified == null)) {
+            return;
+        }
+        appDatabase.indexSourceDao().saveCheckpoint(fetched.source.getUrl(), result.etag, result.lastModified, position);
+    }
+
+    private void refreshIndex(FetchedSource fetched) throws IOException, URISyntaxException, SmuttyException {
+        IndexSource source = fetched.source;
+        progress = 0;
+        maximumProgress = 1;
+        publishMessage(Level.INFO, "Synchronizing index from " + source.getUrl());
+        File indexFile = fetched.result.file;
+        int duplicates = indexDiff.getDuplicates();
+        // setup progress bar on the compressed index size
+        maximumProgress = (int) indexFile.length();
+        publishMessage(Level.INFO, "Index file is", indexFile.length(), "bytes");
+        // check cancel between operations
+        if (isCancelled()) {
+            return;
+        }
+        // decompress, parse and process each entry as it is read
+        publishMessage(Level.INFO, "Checking packages status...");
+        int resumeFrom = fetched.resumeFrom;
+        if (resumeFrom > 0) {
+            publishMessage(Level.INFO, "Resuming interrupted sync after", resumeFrom, "packages");
+        }
+        // packages complete out of order, the checkpoint is the count of leading ones completed
+        final CompletionWatermark watermark = new CompletionWatermark(resumeFrom);
+        long lastCheckpoint = System.currentTimeMillis();
+        int position = 0;
+        CountingInputStream countingInputStream = new CountingInputStream(new FileInputStream(indexFile));
+        IndexReader indexReader = new IndexReader(Decompressor.streamXz(countingInputStream));
+        try {
+            while (indexReader.hasNext()) {
+                final SmuttyPackage pkg = indexReader.next();
+                final int entry = position++;
+                progress = (int) countingInputStream.getCount();
+                // a malformed entry is skipped rather than aborting the whole sync
+                boolean valid = Md5Set.isMd5(pkg.getMd5());
+                if (!valid) {
+                    publishMessage(Level.WARNING, "Skipping index entry", entry, "with invalid md5", pkg.getMd5());
+                }
+                // store in database, only writing what changed, unless this or a previous source listed it already
+                boolean listedFirst = valid && indexDiff.add(pkg);
+                if (entry < resumeFrom) {
+                    if (listedFirst) {
+                        accountProcessed(pkg);
+                    }
+                } else if (listedFirst) {
+                    // download package file if necessary, blocks while enough downloads are in flight
+                    downloadScheduler.submit(new DownloadScheduler.Task() {
+                        @Override
+                        public void execute() throws Exception {
+                            processPackage(pkg);
+                            watermark.complete(entry);
+                        }
+                    });
+                } else {
+                    watermark.complete(entry);
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS) {
+                    saveCheckpoint(fetched, watermark.get());
+                    lastCheckpoint = now;
+                }
+                // check cancel between operations
+                if (isCancelled()) {
+                    downloadScheduler.cancel();
+                    return;
+                }
+            }
+            downloadScheduler.awaitCompletion();
+        } catch (InterruptedException e) {
+            downloadScheduler.cancel();
+            return;
+        } finally {
+            indexReader.close();
+            indexDiff.flush();
+            saveCheckpoint(fetched, watermark.get());
+        }
+        indexDiff.endSource();
+        // remember validators only once every package of the index is in place
+        source.setEtag(fetched.result.etag);
+        source.setLastModified(fetched.result.lastModified);
+        source.setCheckpointEtag(null);
+        source.setCheckpointLastModified(null);
+        source.setCheckpointPosition(0);
+        source.setLastSync(System.currentTimeMillis());
+        source.setPackageCount(indexReader.getCount());
+        appDatabase.indexSourceDao().insert(source);
+        publishMessage(Level.INFO, "Index references " + indexReader.getCount() + " packages,",
+                indexDiff.getDuplicates() - duplicates, "already listed");
+        PackageWriteBuffer writeBuffer = indexDiff.getWriteBuffer();
+        publishMessage(Level.INFO, "Wrote", writeBuffer.getRowsWritten(), "packages in", writeBuffer.getWriteMillis(), "ms,",
+                writeBuffer.getRowsPerSecond(), "rows/s");
+        publishMessage(Level.INFO, "Checksums:", verificationCache.getTrusted(), "trusted from cache,",
+                verificationCache.getHashed(), "computed");
+        publishMessage(Level.INFO, "Indexed tags of", tagIndex.getIndexedPackages(), "packages in", tagIndex.getIndexMillis(), "ms");
+        if (thumbnailGenerator != null) {
+            publishMessage(Level.INFO, "Generated", thumbnailGenerator.getGenerated(), "thumbnails in", thumbnailGenerator.getGenerateMillis(), "ms,",
+                    thumbnailGenerator.getFailed(), "images unavailable");
+        }
+        publishMessage(Level.INFO, "Downloaded", packageDownloader.getBytesTransferred() / 1048576, "Mbytes");
+        publishMessage(Level.INFO, "Total index size", (long) Math.ceil((double) totalBytes.get() / 1048576), "Mbytes");
+        if (cacheManager.getSkipped() > 0) {
+            publishMessage(Level.WARNING, cacheManager.getSkipped(), "packages not fetched, storage quota of",
+                    cacheManager.getQuotaBytes() / 1048576, "Mbytes");
+        }
+    }
+
+    private void markPackagesSeen(List<FetchedSource> unchanged) throws IOException {
+        for (FetchedSource fetched : unchanged) {
+            IndexReader indexReader = new IndexReader(Decompressor.streamXz(new FileInputStream(fetched.result.file)));
+            try {
+                while (indexReader.hasNext()) {
+                    String md5 = indexReader.next().getMd5();
+                    // invalid entries were reported when the index was synchronized
+                    if (Md5Set.isMd5(md5)) {
+                        indexDiff.markSeen(md5);
+                    }
+                }
+            } finally {
+                indexReader.close();
+            }
+        }
+        indexDiff.endSource();
+    }
+
+    private void updatePackageReferences() {
+        publishMessage(Level.INFO, "Updating package references");
+        indexDiff.finish();
+        publishMessage(Level.INFO, "Packages:", indexDiff.getInserted(), "new,", indexDiff.getUpdated(), "updated,",
+                indexDiff.getUnchanged(), "unchanged,", indexDiff.getUnreferenced(), "no longer referenced");
+        publishMessage(Level.INFO, "Removed tags of", tagIndex.removeUnreferenced(), "unreferenced packages");
+    }
+
+    private void removeUnusedFiles() {
+        publishMessage(Level.INFO, "Deleting obsolete packages");
+        // single lazy walk of the store, checked against the hashes seen in the indexes
+        int found = 0;
+        int unused = 0;
+        int count = 0;
+        StoredPackages kept = new StoredPackages();
+        for (File file : packageStore) {
+            found++;
+            String name = file.getName();
+            if (ThumbnailAtlas.isAtlasFile(file)) {
+                // thumbnails only live as long as their package
+                String atlasMd5 = name.substring(0, name.length() - ThumbnailAtlas.SUFFIX.length());
+                if (indexDiff.isSeen(atlasMd5) && packageStore.getFile(atlasMd5).exists()) {
+                    continue;
+                }
+                unused++;
+                publishMessage(Level.DEBUG, "Deleting unused thumbnails " + file.toString());
+                if (file.delete()) {
+                    count++;
+                }
+                continue;
+            }
+            String md5 = PackageDownloader.isPartFile(file) ? name.substring(0, name.length() - PackageDownloader.PART_SUFFIX.length()) : name;
+            if (indexDiff.isSeen(md5)) {
+                if (!PackageDownloader.isPartFile(file)) {
+                    kept.add(md5, file.length());
+                }
+                continue;
+            }
+            unused++;
+            publishMessage(Level.DEBUG, "Deleting unused file " + file.toString());
+            if (file.delete()) {
+                count++;
+            }
+            // decoded copies only live as long as their package
+            decodedCache.invalidate(md5);
+        }
+        publishMessage(Level.INFO, "Found", found, "files on disk,", count, "deleted");
+        if (count != unused) {
+            publishMessage(Level.WARNING, "Only", count, "files deleted, should have been", unused);
+        }
+        applyQuota(kept);
+    }
+
+    private StoredPackages listStored() {
+        StoredPackages stored = new StoredPackages();
+        for (File file : packageStore) {
+            if (!PackageDownloader.isPartFile(file) && !ThumbnailAtlas.isAtlasFile(file)) {
+                stored.add(file.getName(), file.length());
+            }
+        }
+        return stored;
+    }
+
+    private void applyQuota(StoredPackages stored) {
+        publishMessage(Level.INFO, "Store uses", stored.totalBytes / 1048576, "of", cacheManager.getQuotaBytes() / 1048576, "Mbytes");
+        for (String md5 : cacheManager.enforceQuota(stored.md5s, stored.sizes, stored.totalBytes)) {
+            decodedCache.invalidate(md5);
+        }
+        if (cacheManager.getEvicted() > 0) {
+            publishMessage(Level.INFO, "Evicted", cacheManager.getEvicted(), "least recently used packages,",
+                    cacheManager.getEvictedBytes() / 1048576, "Mbytes");
+        }
+    }
+
+    private void synchronize() throws IOException, URISyntaxException, SmuttyException {
+        IndexSourceDao sourceDao = appDatabase.indexSourceDao();
+        // forget the state of sources removed from the settings
+        sourceDao.deleteAllExcept(Arrays.asList(indexUrls));
+        // every source directory serves as a package mirror
+        Set<URI> baseUris = new LinkedHashSet<>();
+        for (String indexUrl : indexUrls) {
+            baseUris.add(new URL(indexUrl).toURI().resolve("."));
+        }
+        mirrorPool = new MirrorPool(new ArrayList<>(baseUris), MirrorPool.DEFAULT_QUARANTINE_MILLIS);
+        // downloads are admitted against what the store holds now
+        StoredPackages stored = listStored();
+        cacheManager.setStored(stored.totalBytes, stored.md5s.size());
+        List<FetchedSource> modified = new ArrayList<>();
+        List<FetchedSource> unchanged = new ArrayList<>();
+        for (String indexUrl : indexUrls) {
+            IndexSource source = sourceDao.find(indexUrl);
+            if (source == null) {
+                source = new IndexSource(indexUrl);
+            }
+            publishMessage(Level.INFO, "Fetching index from " + indexUrl);
+            // fetch index, kept compressed on disk so that it can be streamed;
+            // an interrupted sync is resumed if the copy it was processing is still current
+            boolean interrupted = source.getCheckpointPosition() > 0;
+            IndexCache.FetchResult fetchResult = interrupted
+                    ? indexCache.fetch(indexUrl, source.getCheckpointEtag(), source.getCheckpointLastModified())
+                    : indexCache.fetch(indexUrl, source.getEtag(), source.getLastModified());
+            if (interrupted && fetchResult.modified) {
+                publishMessage(Level.INFO, "Index changed since the interrupted sync, starting over");
+                source.setCheckpointEtag(null);
+                source.setCheckpointLastModified(null);
+                source.setCheckpointPosition(0);
+            }
+            source.setLatencyMillis(fetchResult.latencyMillis);
+            sourceDao.insert(source);
+            publishMessage(Level.INFO, fetchResult.modified ? "Index modified," : "Index not modified,",
+                    "answered in", fetchResult.latencyMillis, "ms");
+            // packages of an index unchanged since its last complete sync are already in place,
+            // unless every checksum has to be verified again
+            if (interrupted || fetchResult.modified || fullScrub) {
+                modified.add(new FetchedSource(source, fetchResult, source.getCheckpointPosition()));
+            } else {
+                unchanged.add(new FetchedSource(source, fetchResult, 0));
+            }
+            // check cancel between operations
+            if (isCancelled()) {
+                return;
+            }
+        }
+        if (!unchanged.isEmpty() && cacheManager.hasRoomForEvicted()) {
+            // the quota was raised or packages were removed: packages left out before are fetched again
+            publishMessage(Level.INFO, "Storage quota leaves room for packages left out before, processing every index");
+            modified.addAll(unchanged);
+            unchanged.clear();
+        }
+        if (modified.isEmpty()) {
+            publishMessage(Level.INFO, "No index changed, packages are up to date");
+            // the quota may have been lowered, or packages prefetched since the last sync
+            applyQuota(stored);
+            return;
+        }
+        // packages of unchanged sources stay referenced and are not processed again
+        markPackagesSeen(unchanged);
+        // a package listed by several sources is downloaded from the fastest one
+        Collections.sort(modified, new Comparator<FetchedSource>() {
+            @Override
+            public int compare(FetchedSource a, FetchedSource b) {
+                long delta = a.result.latencyMillis - b.result.latencyMillis;
+                return delta < 0 ? -1 : (delta > 0 ? 1 : 0);
+            }
+        });
+        try {
+            for (FetchedSource fetched : modified) {
+                refreshIndex(fetched);
+                // do not delete files nor packages of a partial sync
+                if (isCancelled()) {
+                    return;
+                }
+            }
+        } finally {
+            for (MirrorPool.Mirror mirror : mirrorPool.getMirrors()) {
+                publishMessage(Level.INFO, "Mirror", mirror.getBaseUri(), ":", mirror.getSuccesses(), "downloads,",
+                        mirror.getFailures(), "failures");
+                if (mirror.getSuccesses() > 0) {
+                    publishMessage(Level.INFO, "Mirror", mirror.getBaseUri(), ":", Math.round(mirror.getLatencyMillis()),
+                            "ms latency,", Math.round(mirror.getBytesPerSecond() / 1024), "KB/s");
+                }
+            }
+        }
+        updatePackageReferences();
+        removeUnusedFiles();
+    }
+
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        try {
+            // ensures target directories exist
+            File baseDirectory = packageStore.getBaseDirectory();
+            baseDirectory.mkdirs();
+            if (!baseDirectory.exists() || !baseDirectory.isDirectory()) {
+                throw new SmuttyException("Invalid storage " + baseDirectory.toString());
+            }
+            cacheDirectory.mkdirs();
+            if (!cacheDirectory.exists() || !cacheDirectory.isDirectory()) {
+                throw new SmuttyException("Invalid cache " + cacheDirectory.toString());
+            }
+            // bring the store to the current layout before looking for packages
+            if (packageStore.needsMigration()) {
+                publishMessage(Level.INFO, "Migrating package store layout");
+                publishMessage(Level.INFO, "Moved", packageStore.migrate(), "files");
+            }
+            publishMessage(Level.INFO, "Using", downloadParallelism, "parallel downloads");
+            downloadScheduler = new DownloadScheduler(downloadParallelism);
+            indexDiff = new IndexDiff(appDatabase, PackageWriteBuffer.DEFAULT_CHUNK_SIZE);
+            verificationCache = new VerificationCache(appDatabase, fullScrub);
+            cacheManager = new PackageCacheManager(appDatabase, packageStore, storageQuotaBytes);
+            // nothing is decoded by the sync, only the on-disk tier left by browsing is kept in step with the store
+            decodedCache = new DecodedPackageCache(packageStore, DecodedPackageCache.defaultMaxPackageSize(), 0,
+                    decodedDirectory, DecodedPackageCache.DEFAULT_DISK_BUDGET_BYTES);
+            tagIndex = new TagIndex(appDatabase);
+            if (fullScrub) {
+                publishMessage(Level.INFO, "Verifying checksum of every package");
+            }
+            synchronize();
+            synchronized (this) {
+                completed = !cancelled;
+            }
+        }
+        catch (SmuttyException e) {
+            publishMessage(Level.ERROR, e.getMessage());
+        }
+        catch (Exception e) {
+            publishMessage(Level.ERROR, e.getMessage());
+            Log.e(TAG, Log.getStackTraceString(e));
+        }
+        finally {
+            if (downloadScheduler != null) {
+                downloadScheduler.shutdown();
+            }
+        }
+        long end = System.currentTimeMillis();
+        publishMessage(Level.INFO, "Time spent", (int) (((float)(end-start))/1000.0), "seconds");
+    }
+
+    public boolean isFullScrub() {
+        return fullScrub;
+    }
+}
@@ -0,0 +1,424 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import io.github.smutty_tools.smutty_viewer.Decompress.Decompressor;
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Decompressed package contents, kept in two least recently used tiers bounded in bytes:
+ * in memory, then optionally as plain files in a directory of their own.
+ *
+ * A package is decompressed from the store only when it is in neither tier. Packages
+ * decompressing to more than the maximum package size are never held in an array:
+ * they are streamed once into the on-disk tier and served from there, or streamed from
+ * the store on every {@link #open(String)} when there is no room on disk for them.
+ *
+ * Given an executor, the blocks of multi-block packages are decompressed in parallel. Given
+ * a pool of mappings, files of the on-disk tier are read through it rather than copied
+ * through stream buffers.
+ */
+public class DecodedPackageCache {
+
+    public static final long DEFAULT_DISK_BUDGET_BYTES = 500L * 1024 * 1024;
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final long ACCESS_TIME_GRANULARITY_MILLIS = 60 * 60 * 1000;
+
+    private final PackageStore packageStore;
+    private final int maxPackageSize;
+    private final ExecutorService extractionExecutor;
+    private final int extractionParallelism;
+    private final MappedFilePool mappedFilePool;
+
+    private final long memoryBudgetBytes;
+    private final LinkedHashMap<String, byte[]> memoryEntries;
+    private long memoryBytes;
+
+    private final File diskDirectory;
+    private final long diskBudgetBytes;
+    private final LinkedHashMap<String, Long> diskEntries;
+    private long diskBytes;
+
+    private int memoryHits;
+    private int diskHits;
+    private int misses;
+    private int memoryEvictions;
+    private int diskEvictions;
+    private int streamed;
+
+    /**
+     * @param diskDirectory directory of the on-disk tier, or null to keep decoded packages in memory only
+     */
+    public DecodedPackageCache(PackageStore packageStore, int maxPackageSize, long memoryBudgetBytes,
+                               File diskDirectory, long diskBudgetBytes) throws IOException {
+        this(packageStore, maxPackageSize, memoryBudgetBytes, diskDirectory, diskBudgetBytes, null, 1, null);
+    }
+
+    /**
+     * @param extractionExecutor executor decompressing the blocks of a package, or null to decompress them sequentially
+     * @param extractionParallelism number of block ranges decompressed concurrently
+     * @param mappedFilePool mappings the on-disk tier is opened through, or null to open it as streams
+     */
+    public DecodedPackageCache(PackageStore packageStore, int maxPackageSize, long memoryBudgetBytes,
+                               File diskDirectory, long diskBudgetBytes,
+                               ExecutorService extractionExecutor, int extractionParallelism,
+                               MappedFilePool mappedFilePool) throws IOException {
+        this.packageStore = packageStore;
+        this.maxPackageSize = maxPackageSize;
+        this.extractionExecutor = extractionExecutor;
+        this.extractionParallelism = extractionParallelism;
+        this.mappedFilePool = mappedFilePool;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.memoryEntries = new LinkedHashMap<>(16, 0.75f, true);
+        this.memoryBytes = 0;
+        this.diskDirectory = diskDirectory;
+        this.diskBudgetBytes = diskBudgetBytes;
+        this.diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+        this.diskBytes = 0;
+        if (diskDirectory != null) {
+            loadDiskEntries();
+        }
+    }
+
+    /**
+     * Default memory budget: an eighth of the heap the runtime allows.
+     */
+    public static long defaultMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    /**
+     * Default maximum package size: half of the default memory budget, so that a decoded
+     * package is only allocated whole when at least two of them fit in memory.
+     */
+    public static int defaultMaxPackageSize() {
+        return (int) Math.min(defaultMemoryBudget() / 2, Integer.MAX_VALUE);
+    }
+
+    private void loadDiskEntries() throws IOException {
+        if (!diskDirectory.isDirectory() && !diskDirectory.mkdirs() && !diskDirectory.isDirectory()) {
+            throw new IOException("Could not create " + diskDirectory);
+        }
+        File[] files = diskDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list " + diskDirectory);
+        }
+        // oldest first, so that the access order starts from the last modification times
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = a.lastModified();
+                long right = b.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                // interrupted write
+                file.delete();
+                continue;
+            }
+            diskEntries.put(file.getName(), file.length());
+            diskBytes += file.length();
+        }
+        trimDisk();
+    }
+
+    /**
+     * @return decompressed content of the package, which must not be modified
+     */
+    public byte[] get(String md5) throws IOException {
+        synchronized (this) {
+            byte[] content = memoryEntries.get(md5);
+            if (content != null) {
+                memoryHits++;
+                return content;
+            }
+        }
+        byte[] content = readDisk(md5);
+        if (content == null) {
+            content = extract(md5);
+            writeDisk(md5, content);
+        }
+        putMemory(md5, content);
+        return content;
+    }
+
+    /**
+     * Opens the decompressed content of a package, which is not required to fit in memory.
+     */
+    public InputStream open(String md5) throws IOException {
+        synchronized (this) {
+            byte[] content = memoryEntries.get(md5);
+            if (content != null) {
+                memoryHits++;
+                return new ByteArrayInputStream(content);
+            }
+        }
+        File file = findDisk(md5);
+        if (file != null) {
+            return openDisk(file);
+        }
+        File packageFile = packageStore.getFile(md5);
+        if (Decompressor.uncompressedSize(packageFile) > maxPackageSize) {
+            synchronized (this) {
+                misses++;
+                streamed++;
+            }
+            // decoded once into the on-disk tier when it fits there, streamed from the store otherwise
+            file = streamDisk(md5, packageFile);
+            if (file != null) {
+                return openDisk(file);
+            }
+            return Decompressor.streamXz(new FileInputStream(packageFile));
+        }
+        return new ByteArrayInputStream(get(md5));
+    }
+
+    private InputStream openDisk(File file) throws IOException {
+        if (mappedFilePool == null) {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+        return new PackageReader(mappedFilePool, file).openStream();
+    }
+
+    /**
+     * Makes sure the package is decompressed in the on-disk tier, for readers mapping it.
+     *
+     * @return the plain file, or null when there is no on-disk tier or the package does not fit in it
+     */
+    public File getDecodedFile(String md5) throws IOException {
+        if (diskDirectory == null) {
+            return null;
+        }
+        File file = findDisk(md5);
+        if (file != null) {
+            return file;
+        }
+        synchronized (this) {
+            misses++;
+        }
+        File packageFile = packageStore.getFile(md5);
+        if (Decompressor.uncompressedSize(packageFile) > maxPackageSize) {
+            synchronized (this) {
+                streamed++;
+            }
+            return streamDisk(md5, packageFile);
+        }
+        return writeDisk(md5, extract(md5));
+    }
+
+    private byte[] extract(String md5) throws IOException {
+        File file = packageStore.getFile(md5);
+        if (extractionExecutor == null) {
+            return Decompressor.extractXz(file, maxPackageSize);
+        }
+        return Decompressor.extractXzParallel(file, maxPackageSize, extractionExecutor, extractionParallelism);
+    }
+
+    /**
+     * @return the decoded file of the package counted as a disk hit, or null when it is not in the on-disk tier
+     */
+    private synchronized File findDisk(String md5) {
+        if (diskDirectory == null || diskEntries.get(md5) == null) {
+            return null;
+        }
+        File file = new File(diskDirectory, md5);
+        if (!file.exists()) {
+            // removed behind our back, by a sync invalidating it
+            diskBytes -= diskEntries.remove(md5);
+            return null;
+        }
+        diskHits++;
+        // the access order survives restarts through modification times, updated coarsely so
+        // that a mapping of the file is not taken for stale on every hit
+        long now = System.currentTimeMillis();
+        if (now - file.lastModified() > ACCESS_TIME_GRANULARITY_MILLIS) {
+            file.setLastModified(now);
+        }
+        return file;
+    }
+
+    private byte[] readDisk(String md5) throws IOException {
+        File file = findDisk(md5);
+        if (file == null) {
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+        byte[] content = new byte[(int) file.length()];
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < content.length) {
+                int count = inputStream.read(content, offset, content.length - offset);
+                if (count == -1) {
+                    throw new IOException("Decoded file " + file + " was truncated");
+                }
+                offset += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return content;
+    }
+
+    private File writeDisk(String md5, byte[] content) throws IOException {
+        if (diskDirectory == null || content.length > diskBudgetBytes) {
+            return null;
+        }
+        File temporaryFile = new File(diskDirectory, md5 + TEMPORARY_SUFFIX);
+        OutputStream outputStream = new FileOutputStream(temporaryFile);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return commitDisk(md5, temporaryFile);
+    }
+
+    /**
+     * Decompresses a package straight into the on-disk tier, without holding it in memory.
+     */
+    private File streamDisk(String md5, File packageFile) throws IOException {
+        if (diskDirectory == null || Decompressor.uncompressedSize(packageFile) > diskBudgetBytes) {
+            return null;
+        }
+        File temporaryFile = new File(diskDirectory, md5 + TEMPORARY_SUFFIX);
+        InputStream inputStream = Decompressor.streamXz(new FileInputStream(packageFile));
+        try {
+            OutputStream outputStream = new FileOutputStream(temporaryFile);
+            try {
+                Utils.Copy(inputStream, outputStream);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            temporaryFile.delete();
+            throw e;
+        } finally {
+            inputStream.close();
+        }
+        return commitDisk(md5, temporaryFile);
+    }
+
+    private synchronized File commitDisk(String md5, File temporaryFile) throws IOException {
+        File file = new File(diskDirectory, md5);
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Could not move " + temporaryFile + " to " + file);
+        }
+        Long previous = diskEntries.put(md5, file.length());
+        diskBytes += file.length() - (previous == null ? 0 : previous);
+        trimDisk();
+        return file;
+    }
+
+    private synchronized void putMemory(String md5, byte[] content) {
+        if (content.length > memoryBudgetBytes) {
+            return;
+        }
+        byte[] previous = memoryEntries.put(md5, content);
+        memoryBytes += content.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<String, byte[]>> iterator = memoryEntries.entrySet().iterator();
+        while (memoryBytes > memoryBudgetBytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().getValue().length;
+            iterator.remove();
+            memoryEvictions++;
+        }
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> iterator = diskEntries.entrySet().iterator();
+        while (diskBytes > diskBudgetBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            dropDisk(entry.getKey());
+            diskBytes -= entry.getValue();
+            iterator.remove();
+            diskEvictions++;
+        }
+    }
+
+    private void dropDisk(String md5) {
+        File file = new File(diskDirectory, md5);
+        if (mappedFilePool != null) {
+            mappedFilePool.evict(file);
+        }
+        file.delete();
+    }
+
+    /**
+     * Drops a package from both tiers, for instance once it has been removed from the store.
+     */
+    public synchronized void invalidate(String md5) {
+        byte[] content = memoryEntries.remove(md5);
+        if (content != null) {
+            memoryBytes -= content.length;
+        }
+        Long size = diskEntries.remove(md5);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        if (diskDirectory != null) {
+            // may have been decoded by another instance sharing the directory
+            dropDisk(md5);
+        }
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public synchronized int getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized int getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getMemoryEvictions() {
+        return memoryEvictions;
+    }
+
+    public synchronized int getDiskEvictions() {
+        return diskEvictions;
+    }
+
+    /**
+     * Number of packages too large to be extracted whole, streamed instead.
+     */
+    public synchronized int getStreamed() {
+        return streamed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "memory " + memoryBytes + "/" + memoryBudgetBytes + " bytes, " + memoryHits + " hits, " + memoryEvictions + " evictions; "
+                + "disk " + diskBytes + "/" + diskBudgetBytes + " bytes, " + diskHits + " hits, " + diskEvictions + " evictions; "
+                + misses + " misses, " + streamed + " streamed";
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only memory mappings of package files, the least recently used one being dropped
+ * once more than {@code maxMappings} are open.
+ *
+ * Mappings cannot be released explicitly: a dropped one is unmapped by the garbage collector
+ * once no buffer obtained from it is referenced anymore.
+ */
+public class MappedFilePool {
+
+    public static final int DEFAULT_MAX_MAPPINGS = 8;
+
+    private static class Mapping {
+        final MappedByteBuffer buffer;
+        final long lastModified;
+
+        Mapping(MappedByteBuffer buffer, long lastModified) {
+            this.buffer = buffer;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final int maxMappings;
+    private final LinkedHashMap<File, Mapping> mappings;
+    private int hits;
+    private int misses;
+
+    public MappedFilePool(int maxMappings) {
+        if (maxMappings < 1) {
+            throw new IllegalArgumentException("At least one mapping is required");
+        }
+        this.maxMappings = maxMappings;
+        this.mappings = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * @return a read-only buffer over the whole file, with its own position and limit
+     */
+    public synchronized ByteBuffer acquire(File file) throws IOException {
+        Mapping mapping = mappings.get(file);
+        // a file replaced since it was mapped is mapped again
+        if (mapping != null && mapping.lastModified == file.lastModified() && mapping.buffer.capacity() == file.length()) {
+            hits++;
+            return mapping.buffer.duplicate();
+        }
+        misses++;
+        mapping = map(file);
+        mappings.put(file, mapping);
+        Iterator<Map.Entry<File, Mapping>> iterator = mappings.entrySet().iterator();
+        while (mappings.size() > maxMappings && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        return mapping.buffer.duplicate();
+    }
+
+    private static Mapping map(File file) throws IOException {
+        long lastModified = file.lastModified();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be mapped " + file);
+            }
+            // the mapping stays valid once the channel is closed
+            return new Mapping(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), lastModified);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public synchronized void evict(File file) {
+        mappings.remove(file);
+    }
+
+    public synchronized int size() {
+        return mappings.size();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import org.tukaani.xz.SeekableInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Seekable stream reading straight from a mapped buffer, for the xz decoder to read
+ * compressed blocks without intermediate copies through file streams.
+ */
+public class MappedSeekableInputStream extends SeekableInputStream {
+
+    private final ByteBuffer buffer;
+
+    public MappedSeekableInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.buffer.position(0);
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public long position() {
+        return buffer.position();
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        if (position < 0) {
+            throw new IOException("Negative seek position " + position);
+        }
+        // seeking past the end is allowed, reads then return -1
+        buffer.position((int) Math.min(position, buffer.limit()));
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import org.tukaani.xz.SeekableXZInputStream;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to the content of a package file through a pooled memory mapping.
+ *
+ * Uncompressed content is served as views of the mapping, without copy. For xz content,
+ * only the blocks covering the requested range are decompressed, reading the compressed
+ * data from the mapping.
+ */
+public class PackageReader implements Closeable {
+
+    private static final byte[] XZ_MAGIC = { (byte) 0xFD, '7', 'z', 'X', 'Z', 0 };
+
+    private final File file;
+    private final ByteBuffer mapping;
+    private final SeekableXZInputStream xzIn;
+
+    public PackageReader(MappedFilePool pool, File file) throws IOException {
+        this.file = file;
+        this.mapping = pool.acquire(file);
+        this.xzIn = isXz(mapping) ? new SeekableXZInputStream(new MappedSeekableInputStream(mapping)) : null;
+    }
+
+    private static boolean isXz(ByteBuffer buffer) {
+        if (buffer.limit() < XZ_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < XZ_MAGIC.length; i++) {
+            if (buffer.get(i) != XZ_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isCompressed() {
+        return xzIn != null;
+    }
+
+    /**
+     * @return size of the uncompressed content
+     */
+    public long length() {
+        return xzIn != null ? xzIn.length() : mapping.limit();
+    }
+
+    private void checkRange(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > length()) {
+            throw new EOFException("Range " + offset + "+" + length + " outside of " + file + " content of " + length() + " bytes");
+        }
+    }
+
+    /**
+     * @return a read-only buffer with the range of content, a view of the mapping when uncompressed
+     */
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        checkRange(offset, length);
+        if (xzIn == null) {
+            ByteBuffer view = mapping.duplicate();
+            view.position((int) offset);
+            view.limit((int) offset + length);
+            return view.slice();
+        }
+        byte[] bytes = new byte[length];
+        read(offset, bytes, 0, length);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies a range of content into a caller provided buffer.
+     */
+    public void read(long offset, byte[] bytes, int bytesOffset, int length) throws IOException {
+        checkRange(offset, length);
+        if (xzIn == null) {
+            ByteBuffer view = mapping.duplicate();
+            view.position((int) offset);
+            view.get(bytes, bytesOffset, length);
+            return;
+        }
+        synchronized (xzIn) {
+            xzIn.seek(offset);
+            int done = 0;
+            while (done < length) {
+                int count = xzIn.read(bytes, bytesOffset + done, length - done);
+                if (count <= 0) {
+                    throw new EOFException("Could not read " + length + " bytes at " + offset + " from " + file);
+                }
+                done += count;
+            }
+        }
+    }
+
+    /**
+     * Reads the whole content in sequence, closing the reader once the stream is closed.
+     */
+    public InputStream openStream() {
+        return new InputStream() {
+            private long position = 0;
+
+            @Override
+            public int read() throws IOException {
+                byte[] bytes = new byte[1];
+                return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = (int) Math.min(length, length() - position);
+                if (count <= 0) {
+                    return length == 0 ? 0 : -1;
+                }
+                PackageReader.this.read(position, bytes, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(length() - position, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public void close() throws IOException {
+                PackageReader.this.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (xzIn != null) {
+            xzIn.close();
+        }
+    }
+}
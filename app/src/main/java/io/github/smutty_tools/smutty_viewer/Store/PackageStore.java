@@ -0,0 +1,235 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+/**
+ * Content addressed storage of package files, sharded by md5 prefix to keep
+ * directories small: with a depth of 2 and a width of 1, abcdef... is stored as a/b/abcdef...
+ */
+public class PackageStore implements Iterable<File> {
+
+    public static final int DEFAULT_DEPTH = 2;
+    public static final int DEFAULT_WIDTH = 1;
+
+    private static final String LAYOUT_FILE = ".layout";
+
+    private final File baseDirectory;
+    private final int depth;
+    private final int width;
+
+    public PackageStore(File baseDirectory, int depth, int width) {
+        if (depth < 0 || width < 1 || depth * width > 8) {
+            throw new IllegalArgumentException("Invalid store layout " + depth + "x" + width);
+        }
+        this.baseDirectory = baseDirectory;
+        this.depth = depth;
+        this.width = width;
+    }
+
+    public File getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    private String getLayout() {
+        return depth + " " + width;
+    }
+
+    public File getShard(String md5) {
+        String name = md5.toLowerCase();
+        File directory = baseDirectory;
+        for (int level = 0; level < depth; level++) {
+            directory = new File(directory, name.substring(level * width, (level + 1) * width));
+        }
+        return directory;
+    }
+
+    public File getFile(String md5) {
+        return new File(getShard(md5), md5);
+    }
+
+    /**
+     * @return the thumbnail atlas of the package, next to it in its shard
+     */
+    public File getThumbnailFile(String md5) {
+        return new File(getShard(md5), md5 + ThumbnailAtlas.SUFFIX);
+    }
+
+    /**
+     * Same as {@link #getFile(String)}, creating the shard directory if needed.
+     */
+    public File prepareFile(String md5) throws IOException {
+        File shard = getShard(md5);
+        if (!shard.isDirectory() && !shard.mkdirs() && !shard.isDirectory()) {
+            throw new IOException("Could not create " + shard);
+        }
+        return new File(shard, md5);
+    }
+
+    /**
+     * Walks the shards lazily, holding a single directory listing per level.
+     * Hidden files are skipped.
+     */
+    @Override
+    public Iterator<File> iterator() {
+        return new ShardIterator(baseDirectory);
+    }
+
+    public boolean needsMigration() {
+        File layoutFile = new File(baseDirectory, LAYOUT_FILE);
+        if (!layoutFile.exists()) {
+            // an empty store does not need to be walked
+            String[] names = baseDirectory.list();
+            return names != null && names.length > 0;
+        }
+        return !getLayout().equals(readLayout(layoutFile));
+    }
+
+    private static String readLayout(File layoutFile) {
+        try {
+            InputStream inputStream = new FileInputStream(layoutFile);
+            try {
+                byte[] buffer = new byte[(int) layoutFile.length()];
+                int length = inputStream.read(buffer);
+                return new String(buffer, 0, Math.max(0, length), Utils.CHARSET_UTF8).trim();
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void writeLayout() throws IOException {
+        OutputStream outputStream = new FileOutputStream(new File(baseDirectory, LAYOUT_FILE));
+        try {
+            outputStream.write(getLayout().getBytes(Utils.CHARSET_UTF8));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static String getMd5Name(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * Moves every file whose name starts with a md5 into its shard, whatever
+     * the previous layout was (flat store or other sharding), then removes empty shards.
+     *
+     * @return number of files moved
+     */
+    public int migrate() throws IOException {
+        int moved = 0;
+        for (File file : this) {
+            String md5 = getMd5Name(file);
+            if (md5.length() < depth * width) {
+                continue;
+            }
+            File target = new File(getShard(md5), file.getName());
+            if (target.equals(file)) {
+                continue;
+            }
+            prepareFile(md5);
+            if (!file.renameTo(target)) {
+                throw new IOException("Could not move " + file + " to " + target);
+            }
+            moved++;
+        }
+        removeEmptyDirectories(baseDirectory);
+        writeLayout();
+        return moved;
+    }
+
+    private static boolean removeEmptyDirectories(File directory) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return false;
+        }
+        boolean empty = true;
+        for (File child : children) {
+            if (!child.isDirectory() || !removeEmptyDirectories(child) || !child.delete()) {
+                empty = false;
+            }
+        }
+        return empty;
+    }
+
+    private static class ShardIterator implements Iterator<File> {
+
+        private final Deque<File[]> listings;
+        private final Deque<Integer> positions;
+        private File next;
+
+        ShardIterator(File baseDirectory) {
+            this.listings = new ArrayDeque<>();
+            this.positions = new ArrayDeque<>();
+            push(baseDirectory);
+            this.next = advance();
+        }
+
+        private void push(File directory) {
+            File[] listing = directory.listFiles();
+            if (listing != null) {
+                listings.push(listing);
+                positions.push(0);
+            }
+        }
+
+        private File advance() {
+            while (!listings.isEmpty()) {
+                File[] listing = listings.peek();
+                int position = positions.pop();
+                if (position >= listing.length) {
+                    listings.pop();
+                    continue;
+                }
+                positions.push(position + 1);
+                File file = listing[position];
+                // release the entry as soon as it has been handed out
+                listing[position] = null;
+                if (file.getName().startsWith(".")) {
+                    continue;
+                }
+                if (file.isDirectory()) {
+                    push(file);
+                } else {
+                    return file;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public File next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            File result = next;
+            next = advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Thumbnails of the items of a package, packed into a single file read through one mapping.
+ *
+ * Layout, big endian: the encoded thumbnails one after the other, then a table of
+ * (id, offset, length) entries sorted by id, then a trailer made of the table offset,
+ * the entry count, the format version and a magic number. The table being written last,
+ * thumbnails are streamed to the file as they are produced.
+ */
+public class ThumbnailAtlas {
+
+    public static final String SUFFIX = ".thumbs";
+
+    static final int MAGIC = 0x534d5441;
+    static final int VERSION = 1;
+    static final int ENTRY_SIZE = 12;
+    static final int TRAILER_SIZE = 16;
+
+    /**
+     * Reads the bytes of a thumbnail from the mapping, without copies.
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int tableOffset;
+    private final int count;
+
+    ThumbnailAtlas(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int trailer = buffer.limit() - TRAILER_SIZE;
+        if (trailer < 0 || buffer.getInt(trailer + 12) != MAGIC) {
+            throw new IOException("Not a thumbnail atlas");
+        }
+        if (buffer.getInt(trailer + 8) != VERSION) {
+            throw new IOException("Unsupported thumbnail atlas version " + buffer.getInt(trailer + 8));
+        }
+        this.tableOffset = buffer.getInt(trailer);
+        this.count = buffer.getInt(trailer + 4);
+        if (tableOffset < 0 || count < 0 || (long) tableOffset + (long) count * ENTRY_SIZE != trailer) {
+            throw new IOException("Corrupted thumbnail atlas table");
+        }
+    }
+
+    public static boolean isAtlasFile(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    /**
+     * Maps the atlas through the pool, a mapping being shared by every thumbnail of the atlas.
+     */
+    public static ThumbnailAtlas open(MappedFilePool mappedFilePool, File file) throws IOException {
+        return new ThumbnailAtlas(mappedFilePool.acquire(file));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int find(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = buffer.getInt(tableOffset + middle * ENTRY_SIZE);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int id) {
+        return find(id) != -1;
+    }
+
+    /**
+     * @return a view over the encoded thumbnail of the item, null if the atlas has none
+     */
+    public ByteBuffer get(int id) throws IOException {
+        int index = find(id);
+        if (index == -1) {
+            return null;
+        }
+        int entry = tableOffset + index * ENTRY_SIZE;
+        int offset = buffer.getInt(entry + 4);
+        int length = buffer.getInt(entry + 8);
+        if (offset < 0 || length < 0 || (long) offset + length > tableOffset) {
+            throw new IOException("Corrupted thumbnail entry for id " + id);
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice();
+    }
+
+    /**
+     * @return the encoded thumbnail of the item, null if the atlas has none
+     */
+    public InputStream open(int id) throws IOException {
+        ByteBuffer view = get(id);
+        return view == null ? null : new BufferInputStream(view);
+    }
+}
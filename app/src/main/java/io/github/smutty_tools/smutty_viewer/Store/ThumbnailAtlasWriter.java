@@ -0,0 +1,124 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import io.github.smutty_tools.smutty_viewer.Download.PackageDownloader;
+
+/**
+ * Streams thumbnails into a {@link ThumbnailAtlas} file, written next to the target
+ * and moved in place once complete.
+ */
+public class ThumbnailAtlasWriter {
+
+    private final File file;
+    private final File partFile;
+    private final DataOutputStream outputStream;
+    // id in the high bits, index of the thumbnail in the low bits, to sort by id
+    private long[] keys;
+    private int[] offsets;
+    private int[] lengths;
+    private int count;
+    private long position;
+    private boolean closed;
+
+    public ThumbnailAtlasWriter(File file) throws IOException {
+        this.file = file;
+        this.partFile = PackageDownloader.getPartFile(file);
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partFile)));
+        this.keys = new long[64];
+        this.offsets = new int[64];
+        this.lengths = new int[64];
+        this.count = 0;
+        this.position = 0;
+        this.closed = false;
+    }
+
+    public void add(int id, byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Atlas already closed");
+        }
+        if (position + length > Integer.MAX_VALUE - (long) (count + 1) * ThumbnailAtlas.ENTRY_SIZE - ThumbnailAtlas.TRAILER_SIZE) {
+            throw new IOException("Thumbnail atlas too large");
+        }
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count << 1);
+            offsets = Arrays.copyOf(offsets, count << 1);
+            lengths = Arrays.copyOf(lengths, count << 1);
+        }
+        outputStream.write(data, offset, length);
+        keys[count] = ((long) id << 32) | count;
+        offsets[count] = (int) position;
+        lengths[count] = length;
+        count++;
+        position += length;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the table and moves the atlas in place. When an id was added several times,
+     * its first thumbnail is kept.
+     *
+     * @return number of thumbnails in the atlas
+     */
+    public int commit() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Atlas already closed");
+        }
+        closed = true;
+        boolean done = false;
+        try {
+            long[] sorted = Arrays.copyOf(keys, count);
+            Arrays.sort(sorted);
+            int entries = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || (int) (sorted[i] >> 32) != (int) (sorted[i - 1] >> 32)) {
+                    sorted[entries++] = sorted[i];
+                }
+            }
+            for (int i = 0; i < entries; i++) {
+                int index = (int) sorted[i];
+                outputStream.writeInt((int) (sorted[i] >> 32));
+                outputStream.writeInt(offsets[index]);
+                outputStream.writeInt(lengths[index]);
+            }
+            outputStream.writeInt((int) position);
+            outputStream.writeInt(entries);
+            outputStream.writeInt(ThumbnailAtlas.VERSION);
+            outputStream.writeInt(ThumbnailAtlas.MAGIC);
+            outputStream.close();
+            if (!partFile.renameTo(file)) {
+                throw new IOException("Could not move " + partFile + " to " + file);
+            }
+            done = true;
+            return entries;
+        } finally {
+            if (!done) {
+                partFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Drops the thumbnails written so far.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            // deleted anyway
+        }
+        partFile.delete();
+    }
+}
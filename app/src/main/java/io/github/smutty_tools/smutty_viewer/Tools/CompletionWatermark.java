@@ -0,0 +1,42 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import java.util.BitSet;
+
+/**
+ * Tracks positions completed out of order, such as index entries processed by parallel
+ * downloads, as the count of leading positions all completed.
+ */
+public class CompletionWatermark {
+
+    private final BitSet completed;
+    private int watermark;
+
+    /**
+     * @param start positions below it are already completed
+     */
+    public CompletionWatermark(int start) {
+        if (start < 0) {
+            throw new IllegalArgumentException("Invalid start " + start);
+        }
+        this.completed = new BitSet();
+        this.watermark = start;
+    }
+
+    public synchronized void complete(int position) {
+        if (position < watermark) {
+            return;
+        }
+        completed.set(position);
+        while (completed.get(watermark)) {
+            completed.clear(watermark);
+            watermark++;
+        }
+    }
+
+    /**
+     * @return number of leading positions completed
+     */
+    public synchronized int get() {
+        return watermark;
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Feeds a digest with everything successfully written to the underlying stream.
+ *
+ * Unlike java.security.DigestOutputStream, the digest is updated after the write,
+ * so after a failed write it still matches exactly what reached the output.
+ */
+public class DigestingOutputStream extends FilterOutputStream {
+
+    private final MessageDigest digest;
+    private long count;
+
+    public DigestingOutputStream(OutputStream outputStream, MessageDigest digest) {
+        super(outputStream);
+        this.digest = digest;
+        this.count = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digest.update((byte) b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        digest.update(buffer, offset, length);
+        count += length;
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of md5 hashes, stored as pairs of primitive longs (16 bytes per hash).
+ *
+ * Hashes are appended in any order, the arrays are sorted and deduplicated on the
+ * first lookup following an insertion.
+ *
+ * {@link #seal()} sorts the hashes added so far; {@link #containsSealed(String)} only looks
+ * them up, so that lookups can be interleaved with insertions without sorting again.
+ */
+public class Md5Set {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MD5_HEX_LENGTH = 32;
+
+    private long[] high;
+    private long[] low;
+    private int size;
+    private int sealedSize;
+    private boolean sorted;
+
+    public Md5Set() {
+        this.high = new long[INITIAL_CAPACITY];
+        this.low = new long[INITIAL_CAPACITY];
+        this.size = 0;
+        this.sealedSize = 0;
+        this.sorted = true;
+    }
+
+    public static boolean isMd5(String value) {
+        if (value == null || value.length() != MD5_HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MD5_HEX_LENGTH; i++) {
+            if (Character.digit(value.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHalf(String md5, int start) {
+        long result = 0;
+        for (int i = start; i < start + MD5_HEX_LENGTH / 2; i++) {
+            result = (result << 4) | Character.digit(md5.charAt(i), 16);
+        }
+        return result;
+    }
+
+    private static void checkMd5(String md5) {
+        if (!isMd5(md5)) {
+            throw new IllegalArgumentException("Invalid md5 " + md5);
+        }
+    }
+
+    public void add(String md5) {
+        checkMd5(md5);
+        if (size == high.length) {
+            high = Arrays.copyOf(high, size << 1);
+            low = Arrays.copyOf(low, size << 1);
+        }
+        high[size] = parseHalf(md5, 0);
+        low[size] = parseHalf(md5, MD5_HEX_LENGTH / 2);
+        size++;
+        sorted = false;
+    }
+
+    public boolean contains(String md5) {
+        if (!isMd5(md5)) {
+            return false;
+        }
+        sort();
+        return search(md5, size);
+    }
+
+    public void seal() {
+        sort();
+    }
+
+    /**
+     * Whether the hash was added before the last seal or lookup.
+     */
+    public boolean containsSealed(String md5) {
+        return isMd5(md5) && search(md5, sealedSize);
+    }
+
+    private boolean search(String md5, int count) {
+        long h = parseHalf(md5, 0);
+        long l = parseHalf(md5, MD5_HEX_LENGTH / 2);
+        int first = 0;
+        int last = count - 1;
+        while (first <= last) {
+            int middle = (first + last) >>> 1;
+            int cmp = compare(high[middle], low[middle], h, l);
+            if (cmp < 0) {
+                first = middle + 1;
+            } else if (cmp > 0) {
+                last = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        sort();
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        sealedSize = 0;
+        sorted = true;
+    }
+
+    private static int compare(long h1, long l1, long h2, long l2) {
+        if (h1 != h2) {
+            return h1 < h2 ? -1 : 1;
+        }
+        if (l1 != l2) {
+            return l1 < l2 ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        // in-place quicksort moving both arrays together
+        quickSort(0, size - 1);
+        // remove duplicates
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || compare(high[unique - 1], low[unique - 1], high[i], low[i]) != 0) {
+                high[unique] = high[i];
+                low[unique] = low[i];
+                unique++;
+            }
+        }
+        size = unique;
+        sealedSize = unique;
+        sorted = true;
+    }
+
+    private void quickSort(int first, int last) {
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            long pivotHigh = high[middle];
+            long pivotLow = low[middle];
+            int i = first;
+            int j = last;
+            while (i <= j) {
+                while (compare(high[i], low[i], pivotHigh, pivotLow) < 0) {
+                    i++;
+                }
+                while (compare(high[j], low[j], pivotHigh, pivotLow) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // recurse on the smaller part to bound stack depth
+            if (j - first < last - i) {
+                quickSort(first, j);
+                first = i;
+            } else {
+                quickSort(i, last);
+                last = j;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long h = high[i];
+        high[i] = high[j];
+        high[j] = h;
+        long l = low[i];
+        low[i] = low[j];
+        low[j] = l;
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sorted arrays of distinct ints: compact encoding and set operations.
+ *
+ * Encoded arrays are a varint count followed by varint deltas between consecutive values,
+ * so that dense id lists take about one byte per value.
+ */
+public class SortedIntArrays {
+
+    // below this size ratio, a linear merge beats binary searches
+    private static final int GALLOP_RATIO = 16;
+
+    /**
+     * Sorts and removes duplicates of the first {@code count} values, in place.
+     *
+     * @return number of distinct values
+     */
+    public static int sortDistinct(int[] values, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(values, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct;
+    }
+
+    public static byte[] encode(int[] values, int count) {
+        byte[] bytes = new byte[5 * (count + 1)];
+        int position = writeVarint(bytes, 0, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            // the first value is stored as is, as an unsigned int
+            position = writeVarint(bytes, position, values[i] - previous);
+            previous = values[i];
+        }
+        return Arrays.copyOf(bytes, position);
+    }
+
+    private static int writeVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    public static int[] decode(byte[] bytes) throws IOException {
+        int[] position = { 0 };
+        int count = readVarint(bytes, position);
+        if (count < 0 || count > bytes.length) {
+            throw new IOException("Invalid encoded array of " + count + " values in " + bytes.length + " bytes");
+        }
+        int[] values = new int[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarint(bytes, position);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IOException("Truncated encoded array");
+            }
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint in encoded array");
+    }
+
+    public static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] result = new int[a.length];
+        int count = 0;
+        if ((long) a.length * GALLOP_RATIO < b.length) {
+            // few values looked up in a large array
+            int from = 0;
+            for (int value : a) {
+                int index = Arrays.binarySearch(b, from, b.length, value);
+                if (index >= 0) {
+                    result[count++] = value;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+                if (from == b.length) {
+                    break;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+}
@@ -1,12 +1,14 @@
 package io.github.smutty_tools.smutty_viewer.Tools;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.MessageDigest;
@@ -18,16 +20,27 @@ public class Utils {
 
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
     public static final String HASH_MD5 = "MD5";
+    public static final String CHARSET_UTF8 = "UTF-8";
 
     public static final int FILE_ACCESS_BUFFER_LENGTH = 4 * 1024;
     public static final int HASH_BUFFER_LENGTH = 4 * 1024;
 
-    public static void Copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+    /**
+     * Stops with an InterruptedIOException when the thread is interrupted, as blocking
+     * network reads do not notice it.
+     */
+    public static long Copy(InputStream inputStream, OutputStream outputStream) throws IOException {
         byte[] buffer = new byte[FILE_ACCESS_BUFFER_LENGTH];
+        long total = 0;
         int bytesRead;
         while ((bytesRead = inputStream.read(buffer)) != -1) {
             outputStream.write(buffer, 0, bytesRead);
+            total += bytesRead;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted after " + total + " bytes");
+            }
         }
+        return total;
     }
 
     public static void InputToFile(InputStream inputStream, File outputFile) throws IOException {
@@ -57,21 +70,39 @@ public class Utils {
     public static String FileMd5(File inputFile) {
         try {
             FileInputStream inputStream = new FileInputStream(inputFile);
-            String result = HashAlgorithmInput(HASH_MD5, inputStream);
-            return result;
-        } catch (FileNotFoundException e) {
+            try {
+                return HashAlgorithmInput(HASH_MD5, inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static String StringMd5(String input) {
+        try {
+            return HashAlgorithmInput(HASH_MD5, new ByteArrayInputStream(input.getBytes(CHARSET_UTF8)));
+        } catch (UnsupportedEncodingException e) {
             return null;
         }
     }
 
+    public static long UpdateDigest(MessageDigest md, InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[HASH_BUFFER_LENGTH];
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            md.update(buffer, 0, bytesRead);
+            total += bytesRead;
+        }
+        return total;
+    }
+
     public static String HashAlgorithmInput(String algorithm, InputStream inputStream) {
         try {
             MessageDigest md = MessageDigest.getInstance(algorithm);
-            int bytesRead;
-            byte[] buffer = new byte[HASH_BUFFER_LENGTH];
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                md.update(buffer, 0, bytesRead);
-            }
+            UpdateDigest(md, inputStream);
             byte hash[] = md.digest();
             return Utils.ToHexString(hash);
         } catch (NoSuchAlgorithmException e) {
@@ -0,0 +1,184 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class ContentPagerTest {
+
+    private static final int PACKAGES = 40;
+    private static final int ITEMS_PER_PACKAGE = 100;
+
+    /**
+     * Packages of 100 items, the third one being unreadable and the fourth one empty.
+     */
+    private static class FakeSource implements ContentPager.Source {
+        int itemLoads = 0;
+
+        @Override
+        public List<SmuttyPackage> packagesAfter(SmuttyPackage after, int limit) {
+            int start = after == null ? 0 : after.getMinId() / ITEMS_PER_PACKAGE + 1;
+            List<SmuttyPackage> found = new ArrayList<>();
+            for (int i = start; i < Math.min(PACKAGES, start + limit); i++) {
+                found.add(new SmuttyPackage(String.format(Locale.ROOT, "%032x", i), true, "pkg" + i, "image",
+                        i * ITEMS_PER_PACKAGE + ITEMS_PER_PACKAGE - 1, i * ITEMS_PER_PACKAGE, false));
+            }
+            return found;
+        }
+
+        @Override
+        public List<ContentItem> items(SmuttyPackage pkg) throws IOException {
+            itemLoads++;
+            int index = pkg.getMinId() / ITEMS_PER_PACKAGE;
+            if (index == 2) {
+                throw new IOException("corrupted");
+            }
+            List<ContentItem> items = new ArrayList<>();
+            for (int id = pkg.getMinId(); index != 3 && id <= pkg.getMaxId(); id++) {
+                items.add(new ContentItem(id, new String[0], null));
+            }
+            return items;
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.add(runnable);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private FakeSource source;
+    private QueueExecutor background;
+    private ContentPager pager;
+    private int inserted;
+    private int loaded;
+    private int failures;
+
+    @Before
+    public void setUp() {
+        source = new FakeSource();
+        background = new QueueExecutor();
+        inserted = 0;
+        loaded = 0;
+        failures = 0;
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        };
+        pager = new ContentPager(source, background, direct, new ContentPager.Listener() {
+            @Override
+            public void onItemsInserted(int position, int count) {
+                assertEquals(inserted, position);
+                inserted += count;
+            }
+
+            @Override
+            public void onItemsLoaded(int position, int count) {
+                loaded++;
+            }
+
+            @Override
+            public void onLoadFailed(SmuttyPackage pkg, IOException e) {
+                failures++;
+            }
+        }, 4);
+    }
+
+    @Test
+    public void discoversPackagesAsTheEndIsApproached() {
+        pager.discover();
+        background.runAll();
+        // the unreadable and the empty packages have no item
+        assertEquals(2 * ITEMS_PER_PACKAGE, pager.size());
+        assertEquals(1, failures);
+        assertEquals(0, pager.get(0).getId());
+        assertEquals(ITEMS_PER_PACKAGE, pager.get(ITEMS_PER_PACKAGE).getId());
+        assertEquals("pkg1", pager.getPackage(ITEMS_PER_PACKAGE).getFileName());
+
+        // scroll to the end
+        int position = 0;
+        while (!pager.isExhausted()) {
+            while (position < pager.size()) {
+                pager.get(position++);
+                background.runAll();
+            }
+        }
+        assertEquals((PACKAGES - 2) * ITEMS_PER_PACKAGE, pager.size());
+        assertEquals(pager.size(), inserted);
+        assertTrue(pager.getLoadedPages() <= 4);
+    }
+
+    @Test
+    public void reloadsDroppedPages() {
+        while (!pager.isExhausted()) {
+            pager.discover();
+            background.runAll();
+        }
+        int sourceLoads = source.itemLoads;
+        int last = pager.size() - 1;
+        assertNotNull(pager.get(last));
+        // dropped while the last packages were discovered
+        assertNull(pager.get(0));
+        assertNull(pager.get(1));
+        background.runAll();
+        assertEquals(1, loaded);
+        assertEquals(1, source.itemLoads - sourceLoads);
+        assertEquals(0, pager.get(0).getId());
+        assertEquals(ContentPager.PAGE_SIZE - 1, pager.get(ContentPager.PAGE_SIZE - 1).getId());
+        // pages across packages, the unreadable and empty ones included
+        int position = 2 * ITEMS_PER_PACKAGE - 10;
+        assertNull(pager.get(position));
+        background.runAll();
+        assertEquals(ITEMS_PER_PACKAGE + 90, pager.get(position).getId());
+        assertNull(pager.get(2 * ITEMS_PER_PACKAGE));
+        background.runAll();
+        assertEquals(4 * ITEMS_PER_PACKAGE, pager.get(2 * ITEMS_PER_PACKAGE).getId());
+        assertEquals("pkg4", pager.getPackage(2 * ITEMS_PER_PACKAGE).getFileName());
+        assertTrue(pager.getLoadedPages() <= 4);
+    }
+
+    @Test
+    public void dropsResultsAfterReset() {
+        pager.discover();
+        pager.reset();
+        background.runAll();
+        assertEquals(0, pager.size());
+        assertEquals(0, failures);
+        pager.discover();
+        background.runAll();
+        assertEquals(2 * ITEMS_PER_PACKAGE, pager.size());
+    }
+
+    @Test
+    public void readsItems() throws IOException {
+        List<ContentItem> items = ContentItem.readItems(new ByteArrayInputStream(
+                "[{\"id\": 4, \"url\": \"http://a/b.jpg\", \"tags\": [\"cat\"], \"score\": 3}, {\"id\": 5, \"url\": null}]".getBytes(Utils.CHARSET_UTF8)));
+        assertEquals(2, items.size());
+        assertEquals("http://a/b.jpg", items.get(0).getUrl());
+        assertArrayEquals(new String[] { "cat" }, items.get(0).getTags());
+        assertNull(items.get(1).getUrl());
+        assertEquals(0, items.get(1).getTags().length);
+    }
+}
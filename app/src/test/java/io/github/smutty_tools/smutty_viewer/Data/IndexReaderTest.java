@@ -0,0 +1,126 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class IndexReaderTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Produces a json index of the requested size on the fly, without ever holding it in memory.
+     */
+    private static class SyntheticIndexInputStream extends InputStream {
+
+        private final int entries;
+        private int current;
+        private byte[] chunk;
+        private int position;
+
+        SyntheticIndexInputStream(int entries) {
+            this.entries = entries;
+            this.current = -1;
+            this.chunk = "[".getBytes(UTF8);
+            this.position = 0;
+        }
+
+        private boolean nextChunk() {
+            current++;
+            if (current > entries) {
+                return false;
+            }
+            if (current == entries) {
+                chunk = "]".getBytes(UTF8);
+            } else {
+                chunk = String.format(Locale.ROOT,
+                        "%s{\"md5\": \"%032x\", \"file\": \"pkg%d.json.xz\", \"type\": \"image\", \"min_id\": %d, \"max_id\": %d, \"tags\": %b}",
+                        current == 0 ? "" : ",", current, current, current * 100, current * 100 + 99, current % 2 == 0).getBytes(UTF8);
+            }
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position == chunk.length && !nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void readsPackagesInOrder() throws Exception {
+        String json = "[{\"md5\": \"abc\", \"file\": \"a.xz\", \"type\": \"image\", \"min_id\": 1, \"max_id\": 9, \"tags\": true, \"extra\": [1, 2]},"
+                + "{\"tags\": false, \"max_id\": 20, \"min_id\": 10, \"type\": \"video\", \"file\": \"b.xz\", \"md5\": \"def\"}]";
+        IndexReader reader = new IndexReader(new ByteArrayInputStream(json.getBytes(UTF8)));
+        assertTrue(reader.hasNext());
+        SmuttyPackage first = reader.next();
+        assertEquals("abc", first.getMd5());
+        assertEquals("abc_a.xz", first.getPackageFile());
+        assertEquals(1, first.getMinId());
+        assertEquals(9, first.getMaxId());
+        assertTrue(first.isHasTags());
+        assertTrue(reader.hasNext());
+        SmuttyPackage second = reader.next();
+        assertEquals("def", second.getMd5());
+        assertEquals("video", second.getContentType());
+        assertFalse(second.isHasTags());
+        assertFalse(reader.hasNext());
+        assertEquals(2, reader.getCount());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsIncompleteEntry() throws Exception {
+        String json = "[{\"md5\": \"abc\", \"file\": \"a.xz\"}]";
+        IndexReader reader = new IndexReader(new ByteArrayInputStream(json.getBytes(UTF8)));
+        reader.hasNext();
+        reader.next();
+    }
+
+    @Test
+    public void memoryStaysFlatOnLargeIndex() throws Exception {
+        final int entries = 500000;
+        final long maxGrowth = 8 * 1024 * 1024;
+        long baseline = usedMemory();
+        long peak = baseline;
+        IndexReader reader = new IndexReader(new SyntheticIndexInputStream(entries));
+        int count = 0;
+        while (reader.hasNext()) {
+            SmuttyPackage pkg = reader.next();
+            assertEquals(count * 100, pkg.getMinId());
+            count++;
+            if (count % 50000 == 0) {
+                peak = Math.max(peak, usedMemory());
+            }
+        }
+        reader.close();
+        assertEquals(entries, count);
+        assertEquals(entries, reader.getCount());
+        // the json text alone is several tens of megabytes
+        assertTrue("Heap grew by " + (peak - baseline) + " bytes", peak - baseline < maxGrowth);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PackageCacheManagerTest {
+
+    @Test
+    public void evictsLeastRecentlyAccessedFirst() {
+        long[] sizes = { 10, 20, 30, 40 };
+        long[] lastAccess = { 300, 100, 400, 200 };
+        // 100 bytes stored, 60 allowed: the entries accessed at 100 and 200 go
+        int[] evicted = PackageCacheManager.selectEvictions(sizes, lastAccess, 4, 100, 60);
+        assertArrayEquals(new int[] { 1, 3 }, evicted);
+    }
+
+    @Test
+    public void evictsNothingUnderQuota() {
+        long[] sizes = { 10, 20 };
+        long[] lastAccess = { 1, 2 };
+        assertEquals(0, PackageCacheManager.selectEvictions(sizes, lastAccess, 2, 30, 30).length);
+    }
+
+    @Test
+    public void untrackedFilesGoFirst() {
+        long[] sizes = { 50, 50, 50 };
+        long[] lastAccess = { 10, 0, 5 };
+        assertArrayEquals(new int[] { 1 }, PackageCacheManager.selectEvictions(sizes, lastAccess, 3, 150, 100));
+    }
+
+    @Test
+    public void ignoresEntriesBeyondCount() {
+        long[] sizes = { 50, 50, 0, 0 };
+        long[] lastAccess = { 10, 20, 0, 0 };
+        assertArrayEquals(new int[] { 0, 1 }, PackageCacheManager.selectEvictions(sizes, lastAccess, 2, 100, 0));
+    }
+
+    @Test
+    public void admitsDownloadsFittingTheQuota() {
+        // 60 bytes stored and 30 reserved by downloads in flight, 100 allowed
+        assertTrue(PackageCacheManager.fits(90, 10, 100));
+        assertFalse(PackageCacheManager.fits(90, 11, 100));
+        assertTrue(PackageCacheManager.fits(90, 0, 100));
+        assertFalse(PackageCacheManager.fits(100, 0, 100));
+    }
+
+    @Test
+    public void parsesQuotaInMbytes() {
+        assertEquals(100L * 1048576, PackageCacheManager.parseQuota("100"));
+        assertEquals(PackageCacheManager.DEFAULT_QUOTA_MBYTES * 1048576L, PackageCacheManager.parseQuota("none"));
+        assertEquals(PackageCacheManager.DEFAULT_QUOTA_MBYTES * 1048576L, PackageCacheManager.parseQuota("0"));
+        assertEquals(PackageCacheManager.DEFAULT_QUOTA_MBYTES * 1048576L, PackageCacheManager.parseQuota(null));
+    }
+}
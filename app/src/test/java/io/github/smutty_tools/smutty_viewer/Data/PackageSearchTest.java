@@ -0,0 +1,31 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PackageSearchTest {
+
+    @Test
+    public void matchesEveryWordAsPrefix() {
+        assertEquals("images* 0042* json*", PackageSearch.toMatchExpression("Images_0042.json"));
+        // operators are searched as plain words
+        assertEquals("cat* or* dog*", PackageSearch.toMatchExpression("  \"cat\" OR -dog* "));
+        assertNull(PackageSearch.toMatchExpression(" -*\" "));
+        assertNull(PackageSearch.toMatchExpression(null));
+    }
+
+    @Test
+    public void keepsWordsOfAnyScript() {
+        // accented latin, japanese and an arabic-indic digit
+        assertEquals("caf\u00e9* \u00fcber* \u65e5\u672c* \u0663*",
+                PackageSearch.toMatchExpression("Caf\u00e9_\u00dcber-\u65e5\u672c \u0663"));
+    }
+
+    @Test
+    public void foldsUppercaseOfAnyScript() {
+        // the full text index folds names the same way
+        assertEquals("\u00e9va* \u03b1\u03b8\u03b7\u03bd\u03b1* \u043c\u043e\u0441\u043a\u0432\u0430*",
+                PackageSearch.toMatchExpression("\u00c9VA \u0391\u0398\u0397\u039d\u0391 \u041c\u043e\u0441\u043a\u0432\u0430"));
+    }
+}
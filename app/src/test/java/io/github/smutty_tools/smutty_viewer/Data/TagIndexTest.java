@@ -0,0 +1,61 @@
+package io.github.smutty_tools.smutty_viewer.Data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.github.smutty_tools.smutty_viewer.Tools.SortedIntArrays;
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class TagIndexTest {
+
+    private static Map<String, int[]> readTags(String json) throws IOException {
+        return TagIndex.readTags(new ByteArrayInputStream(json.getBytes(Utils.CHARSET_UTF8)));
+    }
+
+    private static TagPosting posting(String tag, String md5, int... ids) {
+        return new TagPosting(tag, md5, "image", SortedIntArrays.encode(ids, ids.length));
+    }
+
+    @Test
+    public void readsTagsOfItems() throws IOException {
+        Map<String, int[]> tags = readTags("[{\"id\": 12, \"tags\": [\"cat\", \"dog\"], \"url\": \"x\"},"
+                + " {\"id\": 3, \"tags\": [\"cat\"]}, {\"tags\": [], \"id\": 7}, {\"id\": 12, \"tags\": [\"cat\"]}, {\"id\": 8}]");
+        assertEquals(2, tags.size());
+        assertArrayEquals(new int[] { 3, 12 }, tags.get("cat"));
+        assertArrayEquals(new int[] { 12 }, tags.get("dog"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnexpectedContent() throws IOException {
+        readTags("{\"items\": []}");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsItemWithoutId() throws IOException {
+        readTags("[{\"tags\": [\"cat\"]}]");
+    }
+
+    @Test
+    public void intersectsWithinEachPackage() {
+        List<String> md5s = TagIndex.intersectPackages(Arrays.asList(
+                posting("cat", "a", 1, 2, 3, 4),
+                posting("dog", "a", 2, 4, 6),
+                // only one of the tags in this package
+                posting("cat", "b", 10, 11),
+                posting("cat", "c", 20, 22),
+                posting("dog", "c", 20, 21),
+                // both tags, never on the same item
+                posting("cat", "d", 30),
+                posting("dog", "d", 31)), 2);
+        assertEquals(Arrays.asList("a", "c"), md5s);
+        assertEquals(Arrays.asList("a", "b"), TagIndex.intersectPackages(Arrays.asList(
+                posting("cat", "a", 1, 2, 3, 4), posting("cat", "b", 10, 11)), 1));
+    }
+}
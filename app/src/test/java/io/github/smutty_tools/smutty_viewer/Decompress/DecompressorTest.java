@@ -0,0 +1,152 @@
+package io.github.smutty_tools.smutty_viewer.Decompress;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class DecompressorTest {
+
+    private static final int SIZE = 4 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Compressible content, mixing random and repeated bytes.
+     */
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(1);
+        for (int i = 0; i < size; i += 64) {
+            int value = random.nextInt(16);
+            Arrays.fill(data, i, Math.min(size, i + 64), (byte) value);
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XZOutputStream xzOut = new XZOutputStream(outputStream, new LZMA2Options(1));
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            xzOut.write(data, offset, Math.min(blockSize, data.length - offset));
+            xzOut.endBlock();
+        }
+        xzOut.close();
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] singleBlock(byte[] data) throws IOException {
+        return compress(data, data.length);
+    }
+
+    private static byte[] multiBlock(byte[] data) throws IOException {
+        return compress(data, BLOCK_SIZE);
+    }
+
+    private static byte[] concatenated(byte[] data) throws IOException {
+        int half = data.length / 2;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(singleBlock(Arrays.copyOfRange(data, 0, half)));
+        outputStream.write(multiBlock(Arrays.copyOfRange(data, half, data.length)));
+        return outputStream.toByteArray();
+    }
+
+    private File write(byte[] compressed) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(compressed);
+        outputStream.close();
+        return file;
+    }
+
+    private static byte[] readStream(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Utils.Copy(inputStream, outputStream);
+        inputStream.close();
+        return outputStream.toByteArray();
+    }
+
+    private void checkAllModes(byte[] data, byte[] compressed) throws IOException {
+        assertArrayEquals(data, readStream(Decompressor.streamXz(new ByteArrayInputStream(compressed))));
+        assertArrayEquals(data, Decompressor.extractXz(write(compressed), SIZE));
+    }
+
+    @Test
+    public void extractsSingleBlock() throws IOException {
+        byte[] data = content(SIZE);
+        checkAllModes(data, singleBlock(data));
+    }
+
+    @Test
+    public void extractsMultipleBlocks() throws IOException {
+        byte[] data = content(SIZE);
+        checkAllModes(data, multiBlock(data));
+    }
+
+    @Test
+    public void extractsConcatenatedStreams() throws IOException {
+        byte[] data = content(SIZE);
+        checkAllModes(data, concatenated(data));
+    }
+
+    @Test
+    public void extractsEmptyAndBlockSizedData() throws IOException {
+        checkAllModes(new byte[0], singleBlock(new byte[0]));
+        byte[] data = content(BLOCK_SIZE);
+        checkAllModes(data, singleBlock(data));
+    }
+
+    @Test
+    public void extractsBlocksInParallel() throws IOException {
+        byte[] data = content(SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertArrayEquals(data, Decompressor.extractXzParallel(write(multiBlock(data)), SIZE, executor, 4));
+            assertArrayEquals(data, Decompressor.extractXzParallel(write(concatenated(data)), SIZE, executor, 3));
+            assertArrayEquals(data, Decompressor.extractXzParallel(write(singleBlock(data)), SIZE, executor, 4));
+            // more threads than blocks
+            byte[] small = content(3 * BLOCK_SIZE - 1);
+            assertArrayEquals(small, Decompressor.extractXzParallel(write(multiBlock(small)), SIZE, executor, 8));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void refusesDataLargerThanLimit() throws IOException {
+        byte[] compressed = multiBlock(content(SIZE));
+        try {
+            Decompressor.extractXz(write(compressed), SIZE - 1);
+            fail("file larger than limit extracted");
+        } catch (IOException e) {
+            // expected
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Decompressor.extractXzParallel(write(compressed), SIZE - 1, executor, 2);
+            fail("file larger than limit extracted in parallel");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
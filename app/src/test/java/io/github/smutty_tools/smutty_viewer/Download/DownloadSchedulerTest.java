@@ -0,0 +1,106 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.smutty_tools.smutty_viewer.Exceptions.SmuttyException;
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class DownloadSchedulerTest {
+
+    private static final int FILES = 24;
+    private static final int LATENCY_MILLIS = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer();
+        server.setLatencyMillis(LATENCY_MILLIS);
+        for (int i = 0; i < FILES; i++) {
+            server.addFile("/file" + i, ("content of file " + i).getBytes("UTF-8"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private DownloadScheduler.Task downloadTask(final URL url, final File file) {
+        return new DownloadScheduler.Task() {
+            @Override
+            public void execute() throws Exception {
+                Utils.DownloadUrlToFile(url, file);
+            }
+        };
+    }
+
+    @Test
+    public void downloadsInParallelWithBoundedConcurrency() throws Exception {
+        final int parallelism = 4;
+        File directory = temporaryFolder.newFolder();
+        DownloadScheduler scheduler = new DownloadScheduler(parallelism);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < FILES; i++) {
+            scheduler.submit(downloadTask(server.url("/file" + i), new File(directory, "file" + i)));
+        }
+        scheduler.awaitCompletion();
+        long elapsed = System.currentTimeMillis() - start;
+        scheduler.shutdown();
+        for (int i = 0; i < FILES; i++) {
+            File file = new File(directory, "file" + i);
+            assertEquals(("content of file " + i).length(), file.length());
+        }
+        assertTrue("Too many concurrent requests: " + server.getMaxInFlight(), server.getMaxInFlight() <= parallelism);
+        assertTrue("Downloads were not parallel: " + elapsed + " ms", elapsed < (long) FILES * LATENCY_MILLIS / 2);
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        scheduler.submit(downloadTask(server.url("/missing"), new File(directory, "missing")));
+        try {
+            scheduler.awaitCompletion();
+            fail("Missing file should have failed");
+        } catch (SmuttyException e) {
+            // expected
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelSkipsPendingTasks() throws Exception {
+        final AtomicInteger executed = new AtomicInteger(0);
+        final DownloadScheduler scheduler = new DownloadScheduler(1);
+        DownloadScheduler.Task slowTask = new DownloadScheduler.Task() {
+            @Override
+            public void execute() throws Exception {
+                executed.incrementAndGet();
+                Thread.sleep(LATENCY_MILLIS);
+            }
+        };
+        // one running and one queued fill the pipeline of a single thread
+        scheduler.submit(slowTask);
+        scheduler.submit(slowTask);
+        scheduler.cancel();
+        scheduler.submit(slowTask);
+        scheduler.awaitCompletion();
+        assertTrue(scheduler.isCancelled());
+        assertTrue(executed.get() <= 1);
+    }
+}
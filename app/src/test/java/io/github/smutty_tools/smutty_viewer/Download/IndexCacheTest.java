@@ -0,0 +1,78 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class IndexCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubHttpServer server;
+    private IndexCache indexCache;
+    private String indexUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer();
+        server.addFile("/index.json.xz", new byte[] { 1, 2, 3 });
+        indexCache = new IndexCache(temporaryFolder.getRoot());
+        indexUrl = server.url("/index.json.xz").toString();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private IndexCache.FetchResult fetchAfter(IndexCache.FetchResult previous) throws Exception {
+        return indexCache.fetch(indexUrl, previous.etag, previous.lastModified);
+    }
+
+    @Test
+    public void unchangedIndexIsNotDownloadedAgain() throws Exception {
+        IndexCache.FetchResult first = indexCache.fetch(indexUrl, null, null);
+        assertTrue(first.modified);
+        assertEquals(3, first.file.length());
+        assertNotNull(first.etag);
+        IndexCache.FetchResult second = fetchAfter(first);
+        assertFalse(second.modified);
+        assertEquals(first.file, second.file);
+        assertEquals(first.etag, second.etag);
+        assertEquals(3, second.file.length());
+        assertEquals(1, server.getNotModified());
+    }
+
+    @Test
+    public void changedIndexIsDownloaded() throws Exception {
+        IndexCache.FetchResult first = indexCache.fetch(indexUrl, null, null);
+        server.addFile("/index.json.xz", new byte[] { 4, 5, 6, 7 });
+        IndexCache.FetchResult result = fetchAfter(first);
+        assertTrue(result.modified);
+        assertNotEquals(first.etag, result.etag);
+        assertEquals(4, result.file.length());
+        assertEquals(0, server.getNotModified());
+    }
+
+    @Test
+    public void missingCachedCopyIsDownloadedAgain() throws Exception {
+        IndexCache.FetchResult first = indexCache.fetch(indexUrl, null, null);
+        assertTrue(first.file.delete());
+        IndexCache.FetchResult second = fetchAfter(first);
+        assertTrue(second.modified);
+        assertTrue(second.file.exists());
+    }
+
+    @Test
+    public void serverWithoutValidatorsAlwaysDownloads() throws Exception {
+        server.setValidatorsSent(false);
+        IndexCache.FetchResult first = indexCache.fetch(indexUrl, null, null);
+        assertNull(first.etag);
+        assertTrue(fetchAfter(first).modified);
+    }
+}
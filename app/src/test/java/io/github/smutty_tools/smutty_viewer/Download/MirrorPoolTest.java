@@ -0,0 +1,155 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class MirrorPoolTest {
+
+    private static final int PACKAGES = 20;
+    private static final int SIZE = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubHttpServer fast;
+    private StubHttpServer slow;
+    private StubHttpServer flaky;
+    private String[] md5s;
+
+    @Before
+    public void setUp() throws Exception {
+        fast = new StubHttpServer();
+        slow = new StubHttpServer();
+        flaky = new StubHttpServer();
+        slow.setLatencyMillis(100);
+        md5s = new String[PACKAGES];
+        Random random = new Random(3);
+        for (int i = 0; i < PACKAGES; i++) {
+            byte[] content = new byte[SIZE];
+            random.nextBytes(content);
+            md5s[i] = Utils.ToHexString(MessageDigest.getInstance(Utils.HASH_MD5).digest(content));
+            for (StubHttpServer server : Arrays.asList(fast, slow, flaky)) {
+                server.addFile("/mirror/pkg" + i, content);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        fast.stop();
+        slow.stop();
+        flaky.stop();
+    }
+
+    private static URI baseUri(StubHttpServer server) throws Exception {
+        return server.url("/mirror/").toURI();
+    }
+
+    private MirrorPool pool(long quarantineMillis, StubHttpServer... servers) throws Exception {
+        List<URI> baseUris = new ArrayList<>();
+        for (StubHttpServer server : servers) {
+            baseUris.add(baseUri(server));
+        }
+        return new MirrorPool(baseUris, quarantineMillis);
+    }
+
+    private void downloadAll(MirrorPool mirrorPool) throws Exception {
+        PackageDownloader downloader = new PackageDownloader(1);
+        for (int i = 0; i < PACKAGES; i++) {
+            File target = new File(temporaryFolder.getRoot(), md5s[i]);
+            mirrorPool.download(downloader, "pkg" + i, target, md5s[i]);
+            assertEquals(SIZE, target.length());
+        }
+    }
+
+    @Test
+    public void prefersFastestMirror() throws Exception {
+        MirrorPool mirrorPool = pool(MirrorPool.DEFAULT_QUARANTINE_MILLIS, slow, fast);
+        downloadAll(mirrorPool);
+        // each mirror is measured once, then the fast one serves everything else
+        assertEquals(1, slow.getServed());
+        assertEquals(PACKAGES - 1, fast.getServed());
+        assertEquals(baseUri(fast), mirrorPool.rank().get(0).getBaseUri());
+        assertTrue(mirrorPool.rank().get(1).getLatencyMillis() >= 100);
+    }
+
+    @Test
+    public void failsOverToAnotherMirror() throws Exception {
+        flaky.setFailureRate(1);
+        MirrorPool mirrorPool = pool(MirrorPool.DEFAULT_QUARANTINE_MILLIS, flaky, slow);
+        downloadAll(mirrorPool);
+        assertEquals(PACKAGES, slow.getServed());
+        // quarantined after consecutive failures, then left alone
+        assertEquals(MirrorPool.MAX_CONSECUTIVE_FAILURES, flaky.getRequests());
+        MirrorPool.Mirror flakyMirror = mirrorPool.rank().get(1);
+        assertEquals(baseUri(flaky), flakyMirror.getBaseUri());
+        assertFalse(mirrorPool.isHealthy(flakyMirror));
+    }
+
+    @Test
+    public void survivesPartiallyFailingMirrors() throws Exception {
+        flaky.setFailureRate(0.5);
+        fast.setFailureRate(0.3);
+        MirrorPool mirrorPool = pool(10, flaky, fast, slow);
+        downloadAll(mirrorPool);
+        assertEquals(PACKAGES, flaky.getServed() + fast.getServed() + slow.getServed());
+    }
+
+    @Test
+    public void quarantineExpires() throws Exception {
+        flaky.setFailureRate(1);
+        // long enough to outlast the download from the other mirror after the last failure
+        MirrorPool mirrorPool = pool(1000, flaky, fast);
+        PackageDownloader downloader = new PackageDownloader(1);
+        for (int i = 0; i < MirrorPool.MAX_CONSECUTIVE_FAILURES; i++) {
+            mirrorPool.download(downloader, "pkg" + i, new File(temporaryFolder.getRoot(), md5s[i]), md5s[i]);
+        }
+        MirrorPool.Mirror flakyMirror = mirrorPool.rank().get(1);
+        assertFalse(mirrorPool.isHealthy(flakyMirror));
+        Thread.sleep(1100);
+        assertTrue(mirrorPool.isHealthy(flakyMirror));
+    }
+
+    @Test
+    public void missingPackageDoesNotHurtHealth() throws Exception {
+        MirrorPool mirrorPool = pool(MirrorPool.DEFAULT_QUARANTINE_MILLIS, fast, slow);
+        PackageDownloader downloader = new PackageDownloader(1);
+        for (int i = 0; i < 3; i++) {
+            try {
+                mirrorPool.download(downloader, "missing", new File(temporaryFolder.getRoot(), md5s[0]), md5s[0]);
+                fail("Missing package should have failed");
+            } catch (FileNotFoundException e) {
+                // expected
+            }
+        }
+        for (MirrorPool.Mirror mirror : mirrorPool.rank()) {
+            assertTrue(mirrorPool.isHealthy(mirror));
+            assertEquals(0, mirror.getFailures());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenEveryMirrorFails() throws Exception {
+        flaky.setFailureRate(1);
+        slow.setFailureRate(1);
+        pool(MirrorPool.DEFAULT_QUARANTINE_MILLIS, flaky, slow)
+                .download(new PackageDownloader(1), "pkg0", new File(temporaryFolder.getRoot(), md5s[0]), md5s[0]);
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import io.github.smutty_tools.smutty_viewer.Exceptions.SmuttyException;
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class PackageDownloaderTest {
+
+    private static final int SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubHttpServer server;
+    private byte[] content;
+    private String md5;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        md5 = Utils.ToHexString(MessageDigest.getInstance(Utils.HASH_MD5).digest(content));
+        server = new StubHttpServer();
+        server.addFile("/package", content);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        java.io.FileInputStream inputStream = new java.io.FileInputStream(file);
+        byte[] data = new byte[(int) file.length()];
+        int offset = 0;
+        while (offset < data.length) {
+            offset += inputStream.read(data, offset, data.length - offset);
+        }
+        inputStream.close();
+        return data;
+    }
+
+    @Test
+    public void resumesAfterDroppedConnections() throws Exception {
+        File target = new File(temporaryFolder.getRoot(), md5);
+        server.dropConnections(SIZE / 4, 2);
+        PackageDownloader downloader = new PackageDownloader(3);
+        long transferred = downloader.download(server.url("/package"), target, md5).getTransferred();
+        assertTrue(Arrays.equals(content, readFile(target)));
+        assertFalse(PackageDownloader.getPartFile(target).exists());
+        assertEquals(2, server.getRangeRequests());
+        // nothing was transferred twice, nor read back to be hashed
+        assertEquals(SIZE, transferred);
+        assertEquals(0, downloader.getBytesReread());
+    }
+
+    @Test
+    public void resumesExistingPartFile() throws Exception {
+        File target = new File(temporaryFolder.getRoot(), md5);
+        OutputStream outputStream = new FileOutputStream(PackageDownloader.getPartFile(target));
+        outputStream.write(content, 0, SIZE / 2);
+        outputStream.close();
+        PackageDownloader downloader = new PackageDownloader(1);
+        long transferred = downloader.download(server.url("/package"), target, md5).getTransferred();
+        assertEquals(SIZE / 2, transferred);
+        // only the part written by a previous run has to be hashed from storage
+        assertEquals(SIZE / 2, downloader.getBytesReread());
+        assertTrue(Arrays.equals(content, readFile(target)));
+    }
+
+    @Test
+    public void restartsWhenRangeIsNotSupported() throws Exception {
+        File target = new File(temporaryFolder.getRoot(), md5);
+        server.setRangeSupported(false);
+        server.dropConnections(SIZE / 4, 1);
+        new PackageDownloader(2).download(server.url("/package"), target, md5);
+        assertTrue(Arrays.equals(content, readFile(target)));
+        assertEquals(0, server.getRangeRequests());
+    }
+
+    @Test
+    public void keepsPartFileWhenAttemptsAreExhausted() throws Exception {
+        File target = new File(temporaryFolder.getRoot(), md5);
+        server.dropConnections(SIZE / 4, 1);
+        try {
+            new PackageDownloader(1).download(server.url("/package"), target, md5);
+            fail("Dropped connection should have failed");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+        assertFalse(target.exists());
+        assertEquals(SIZE / 4, PackageDownloader.getPartFile(target).length());
+    }
+
+    @Test
+    public void concurrentDownloadsOfATargetAreSerialized() throws Exception {
+        final File target = new File(temporaryFolder.getRoot(), md5);
+        server.setLatencyMillis(200);
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            // separate downloaders, as the sync and the prefetcher have
+            final PackageDownloader downloader = new PackageDownloader(1);
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        downloader.download(server.url("/package"), target, md5);
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty());
+        assertTrue(Arrays.equals(content, readFile(target)));
+        assertFalse(PackageDownloader.getPartFile(target).exists());
+        // the second download found the package in place
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void rejectsInvalidChecksum() throws Exception {
+        File target = new File(temporaryFolder.getRoot(), "0123456789abcdef0123456789abcdef");
+        try {
+            new PackageDownloader(1).download(server.url("/package"), target, target.getName());
+            fail("Checksum mismatch should have failed");
+        } catch (SmuttyException e) {
+            // expected
+        }
+        assertFalse(target.exists());
+        assertFalse(PackageDownloader.getPartFile(target).exists());
+    }
+
+    @Test
+    public void missingPackageIsNotRetried() throws Exception {
+        File target = new File(temporaryFolder.getRoot(), md5);
+        try {
+            new PackageDownloader(3).download(server.url("/missing"), target, md5);
+            fail("Missing package should have failed");
+        } catch (java.io.FileNotFoundException e) {
+            // expected
+        }
+        assertEquals(1, server.getRequests());
+    }
+}
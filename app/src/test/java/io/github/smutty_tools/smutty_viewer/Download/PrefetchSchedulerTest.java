@@ -0,0 +1,154 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.smutty_tools.smutty_viewer.Data.SmuttyPackage;
+
+import static org.junit.Assert.*;
+
+public class PrefetchSchedulerTest {
+
+    private static final long SIZE = 10;
+
+    /**
+     * Packages of 100 ids each, fetches blocking until released when asked to.
+     */
+    private static class FakeSource implements PrefetchScheduler.Source {
+
+        final List<SmuttyPackage> packages = new ArrayList<>();
+        final Map<String, Long> stored = Collections.synchronizedMap(new HashMap<String, Long>());
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<String>());
+        volatile CountDownLatch release = null;
+        volatile int interrupted = 0;
+
+        FakeSource(int count) {
+            for (int i = 0; i < count; i++) {
+                String md5 = String.format(Locale.ROOT, "%032x", i);
+                packages.add(new SmuttyPackage(md5, true, "pkg" + i, "image", i * 100 + 99, i * 100, false));
+            }
+        }
+
+        @Override
+        public List<SmuttyPackage> packagesFrom(String contentType, int contentId, int limit) {
+            List<SmuttyPackage> result = new ArrayList<>();
+            for (SmuttyPackage pkg : packages) {
+                if (pkg.getContentType().equals(contentType) && pkg.getMaxId() >= contentId && result.size() < limit) {
+                    result.add(pkg);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public long storedSize(String md5) {
+            Long size = stored.get(md5);
+            return size == null ? -1 : size;
+        }
+
+        @Override
+        public long fetch(SmuttyPackage pkg) throws Exception {
+            CountDownLatch latch = release;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    interrupted++;
+                    throw e;
+                }
+            }
+            fetched.add(pkg.getMd5());
+            stored.put(pkg.getMd5(), SIZE);
+            return SIZE;
+        }
+    }
+
+    private PrefetchScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void waitFor(FakeSource source, int fetched) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (source.fetched.size() < fetched && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void fetchesFollowingPackagesWithinBudget() throws Exception {
+        FakeSource source = new FakeSource(20);
+        // already stored packages count towards the budget
+        source.stored.put(source.packages.get(6).getMd5(), SIZE);
+        scheduler = new PrefetchScheduler(source, 3 * SIZE);
+        scheduler.onPosition("image", 550);
+        waitFor(source, 2);
+        Thread.sleep(50);
+        assertEquals(2, source.fetched.size());
+        assertEquals(source.packages.get(5).getMd5(), source.fetched.get(0));
+        assertEquals(source.packages.get(7).getMd5(), source.fetched.get(1));
+    }
+
+    @Test
+    public void movingWithinWindowKeepsPrefetching() throws Exception {
+        FakeSource source = new FakeSource(20);
+        source.release = new CountDownLatch(1);
+        scheduler = new PrefetchScheduler(source, 100 * SIZE);
+        scheduler.onPosition("image", 0);
+        Thread.sleep(50);
+        scheduler.onPosition("image", 150);
+        scheduler.onPosition("image", 1999);
+        source.release.countDown();
+        waitFor(source, 20);
+        assertEquals(0, source.interrupted);
+        assertEquals(20, source.fetched.size());
+    }
+
+    @Test
+    public void jumpingElsewhereCancels() throws Exception {
+        FakeSource source = new FakeSource(100);
+        source.release = new CountDownLatch(1);
+        scheduler = new PrefetchScheduler(source, 2 * SIZE);
+        scheduler.onPosition("image", 0);
+        Thread.sleep(50);
+        // beyond the packages looked up for the first window
+        scheduler.onPosition("image", 9000);
+        Thread.sleep(50);
+        assertEquals(1, source.interrupted);
+        source.release.countDown();
+        waitFor(source, 2);
+        Thread.sleep(50);
+        assertEquals(2, source.fetched.size());
+        assertEquals(source.packages.get(90).getMd5(), source.fetched.get(0));
+        assertEquals(source.packages.get(91).getMd5(), source.fetched.get(1));
+    }
+
+    @Test
+    public void zeroBudgetDisablesPrefetch() throws Exception {
+        FakeSource source = new FakeSource(5);
+        scheduler = new PrefetchScheduler(source, 0);
+        scheduler.onPosition("image", 0);
+        Thread.sleep(50);
+        assertTrue(source.fetched.isEmpty());
+    }
+
+    @Test
+    public void parsesBudgetInMbytes() {
+        assertEquals(0, PrefetchScheduler.parseBudget("0"));
+        assertEquals(5L * 1048576, PrefetchScheduler.parseBudget("5"));
+        assertEquals(PrefetchScheduler.DEFAULT_BUDGET_MBYTES * 1048576L, PrefetchScheduler.parseBudget(""));
+    }
+}
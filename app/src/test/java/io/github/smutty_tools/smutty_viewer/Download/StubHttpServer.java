@@ -0,0 +1,196 @@
+package io.github.smutty_tools.smutty_viewer.Download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local http server serving in-memory files, with injectable latency, failure rate, range
+ * requests, conditional requests and connections dropped in the middle of a transfer.
+ */
+public class StubHttpServer implements HttpHandler {
+
+    private final HttpServer server;
+    private final Map<String, byte[]> files;
+    private final AtomicInteger inFlight;
+    private final AtomicInteger maxInFlight;
+    private final AtomicInteger requests;
+    private volatile int latencyMillis;
+    private volatile boolean rangeSupported;
+    private volatile int dropAfterBytes;
+    private final AtomicInteger dropsLeft;
+    private final AtomicInteger rangeRequests;
+    private final AtomicInteger notModified;
+    private volatile boolean validatorsSent;
+    private volatile double failureRate;
+    private final Random random;
+    private final AtomicInteger served;
+
+    public StubHttpServer() throws IOException {
+        this.files = new HashMap<>();
+        this.inFlight = new AtomicInteger(0);
+        this.maxInFlight = new AtomicInteger(0);
+        this.requests = new AtomicInteger(0);
+        this.latencyMillis = 0;
+        this.rangeSupported = true;
+        this.dropAfterBytes = 0;
+        this.dropsLeft = new AtomicInteger(0);
+        this.rangeRequests = new AtomicInteger(0);
+        this.notModified = new AtomicInteger(0);
+        this.validatorsSent = true;
+        this.failureRate = 0;
+        this.random = new Random(0);
+        this.served = new AtomicInteger(0);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public synchronized void addFile(String path, byte[] content) {
+        files.put(path, content);
+    }
+
+    public void setLatencyMillis(int latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setRangeSupported(boolean rangeSupported) {
+        this.rangeSupported = rangeSupported;
+    }
+
+    /**
+     * The next {@code times} responses are cut after {@code bytes} bytes of body.
+     */
+    public void dropConnections(int bytes, int times) {
+        this.dropAfterBytes = bytes;
+        this.dropsLeft.set(times);
+    }
+
+    /**
+     * Fraction of the requests answered with a 503 error.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Number of responses whose body was sent completely.
+     */
+    public int getServed() {
+        return served.get();
+    }
+
+    public void setValidatorsSent(boolean validatorsSent) {
+        this.validatorsSent = validatorsSent;
+    }
+
+    public int getNotModified() {
+        return notModified.get();
+    }
+
+    public int getRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public URL url(String path) throws MalformedURLException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        while (true) {
+            int max = maxInFlight.get();
+            if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                break;
+            }
+        }
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            byte[] content;
+            boolean failing;
+            synchronized (this) {
+                content = files.get(exchange.getRequestURI().getPath());
+                failing = random.nextDouble() < failureRate;
+            }
+            if (failing) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (validatorsSent) {
+                // the etag is derived from the content, last-modified only changes with the etag
+                String etag = "\"" + Arrays.hashCode(content) + "\"";
+                String lastModified = "Thu, 01 Jan 2015 00:00:00 GMT";
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            int start = 0;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && rangeSupported && range.startsWith("bytes=") && range.endsWith("-")) {
+                rangeRequests.incrementAndGet();
+                start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                if (start >= content.length) {
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+                exchange.sendResponseHeaders(206, content.length - start);
+            } else {
+                exchange.sendResponseHeaders(200, content.length);
+            }
+            OutputStream outputStream = exchange.getResponseBody();
+            int length = content.length - start;
+            if (dropsLeft.getAndDecrement() > 0 && dropAfterBytes < length) {
+                // closing with missing bytes makes the server drop the connection
+                outputStream.write(content, start, dropAfterBytes);
+                outputStream.flush();
+                return;
+            }
+            outputStream.write(content, start, length);
+            outputStream.close();
+            served.incrementAndGet();
+        } catch (InterruptedException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.smutty_tools.smutty_viewer.Images;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.*;
+
+public class ImageSizingTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void downsamplesToTargetSize() {
+        // never smaller than the target
+        assertEquals(1, ImageSizing.sampleSize(150, 150, 96, 96, 4, 64 * MB));
+        assertEquals(2, ImageSizing.sampleSize(200, 200, 96, 96, 4, 64 * MB));
+        assertEquals(2, ImageSizing.sampleSize(400, 300, 150, 150, 4, 64 * MB));
+        assertEquals(4, ImageSizing.sampleSize(4000, 3000, 720, 720, 4, 64 * MB));
+        assertEquals(16, ImageSizing.sampleSize(4000, 3000, 96, 96, 4, 64 * MB));
+        // panorama: the smaller side decides
+        assertEquals(2, ImageSizing.sampleSize(8000, 400, 96, 192, 4, 64 * MB));
+        // no target
+        assertEquals(1, ImageSizing.sampleSize(4000, 3000, 0, 0, 4, 64 * MB));
+    }
+
+    @Test
+    public void fitsThumbnailsInSquare() {
+        assertEquals(128, ImageSizing.fitDimension(400, 400, 300, 128));
+        assertEquals(96, ImageSizing.fitDimension(300, 400, 300, 128));
+        // already small enough
+        assertEquals(100, ImageSizing.fitDimension(100, 100, 60, 128));
+        // never empty
+        assertEquals(1, ImageSizing.fitDimension(10, 4000, 10, 128));
+    }
+
+    @Test
+    public void downsamplesBeyondTargetToFitMemory() {
+        // 48 MB at full size
+        assertEquals(2, ImageSizing.sampleSize(4000, 3000, 0, 0, 4, 16 * MB));
+        assertEquals(8, ImageSizing.sampleSize(4000, 3000, 1000, 1000, 4, 2 * MB));
+        assertEquals(1250, ImageSizing.sampledDimension(5000, 4));
+        assertEquals(1251, ImageSizing.sampledDimension(5001, 4));
+    }
+
+    @Test
+    public void bucketsFitRequestedSizes() {
+        assertEquals(1024, ImageSizing.bucketOf(1024));
+        assertEquals(1024, ImageSizing.bucketOf(2047));
+        assertEquals(1024, ImageSizing.bucketAtLeast(1024));
+        assertEquals(2048, ImageSizing.bucketAtLeast(1025));
+        // every buffer of the bucket holding requests of a size is large enough
+        for (long request = 1; request < 100000; request += 97) {
+            assertTrue(ImageSizing.bucketOf(ImageSizing.bucketAtLeast(request)) >= request);
+        }
+    }
+
+    @Test
+    public void poolReusesByBucketWithinBudget() {
+        BucketPool<String> pool = new BucketPool<>(1000);
+        assertTrue(pool.put(512, "a", 300).isEmpty());
+        assertTrue(pool.put(512, "b", 300).isEmpty());
+        assertTrue(pool.put(256, "c", 300).isEmpty());
+        assertNull(pool.take(1024));
+        // most recently released first
+        assertEquals("b", pool.take(512));
+        assertEquals(600, pool.getBytes());
+        assertTrue(pool.put(256, "d", 300).isEmpty());
+        // oldest released dropped to stay within the budget
+        ArrayDeque<String> dropped = pool.put(256, "e", 300);
+        assertEquals(1, dropped.size());
+        assertEquals("a", dropped.peek());
+        assertNull(pool.take(512));
+        assertEquals("e", pool.take(256));
+        assertEquals(2, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals("f", pool.put(1, "f", 2000).peek());
+        assertEquals(2, pool.clear().size());
+        assertEquals(0, pool.getBytes());
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.smutty_tools.smutty_viewer.Services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SyncSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void parsesFrequencyInMinutes() {
+        assertEquals(15 * MINUTE, SyncScheduler.parseIntervalMillis("15"));
+        assertEquals(360 * MINUTE, SyncScheduler.parseIntervalMillis("360"));
+    }
+
+    @Test
+    public void neverSchedulesNonPositiveFrequencies() {
+        assertEquals(-1, SyncScheduler.parseIntervalMillis("-1"));
+        assertEquals(-1, SyncScheduler.parseIntervalMillis("0"));
+    }
+
+    @Test
+    public void defaultsInvalidFrequencies() {
+        long expected = Long.parseLong(SyncScheduler.DEFAULT_SYNC_FREQUENCY) * MINUTE;
+        assertEquals(expected, SyncScheduler.parseIntervalMillis(null));
+        assertEquals(expected, SyncScheduler.parseIntervalMillis("often"));
+    }
+}
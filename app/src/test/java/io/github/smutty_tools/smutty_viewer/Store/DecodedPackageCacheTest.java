@@ -0,0 +1,223 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class DecodedPackageCacheTest {
+
+    private static final int PACKAGE_SIZE = 1024 * 1024;
+    private static final int PACKAGES = 8;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String md5(int i) {
+        return String.format(Locale.ROOT, "%032x", i + 1);
+    }
+
+    private static byte[] content(int i) {
+        byte[] data = new byte[PACKAGE_SIZE];
+        Random random = new Random(i);
+        for (int offset = 0; offset < data.length; offset += 64) {
+            Arrays.fill(data, offset, offset + 64, (byte) random.nextInt(16));
+        }
+        return data;
+    }
+
+    private PackageStore createStore() throws IOException {
+        PackageStore store = new PackageStore(temporaryFolder.newFolder(), PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        for (int i = 0; i < PACKAGES; i++) {
+            XZOutputStream xzOut = new XZOutputStream(new FileOutputStream(store.prepareFile(md5(i))), new LZMA2Options(1));
+            xzOut.write(content(i));
+            xzOut.close();
+        }
+        return store;
+    }
+
+    @Test
+    public void servesFromMemoryThenDisk() throws IOException {
+        PackageStore store = createStore();
+        File diskDirectory = temporaryFolder.newFolder();
+        DecodedPackageCache cache = new DecodedPackageCache(store, PACKAGE_SIZE, 2 * PACKAGE_SIZE, diskDirectory, 4 * PACKAGE_SIZE);
+        assertArrayEquals(content(0), cache.get(md5(0)));
+        assertEquals(1, cache.getMisses());
+        assertSame(cache.get(md5(0)), cache.get(md5(0)));
+        assertEquals(2, cache.getMemoryHits());
+
+        cache.get(md5(1));
+        cache.get(md5(2));
+        // package 0 left memory but is still decoded on disk
+        assertEquals(1, cache.getMemoryEvictions());
+        assertEquals(2 * PACKAGE_SIZE, cache.getMemoryBytes());
+        assertArrayEquals(content(0), cache.get(md5(0)));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(3, cache.getMisses());
+
+        cache.get(md5(3));
+        cache.get(md5(4));
+        assertEquals(1, cache.getDiskEvictions());
+        assertEquals(4 * PACKAGE_SIZE, cache.getDiskBytes());
+        assertEquals(4, diskDirectory.list().length);
+    }
+
+    @Test
+    public void reloadsDiskTier() throws IOException {
+        PackageStore store = createStore();
+        File diskDirectory = temporaryFolder.newFolder();
+        DecodedPackageCache cache = new DecodedPackageCache(store, PACKAGE_SIZE, PACKAGE_SIZE, diskDirectory, 8 * PACKAGE_SIZE);
+        cache.get(md5(0));
+        cache.get(md5(1));
+        assertTrue(new File(diskDirectory, "leftover.tmp").createNewFile());
+
+        cache = new DecodedPackageCache(store, PACKAGE_SIZE, PACKAGE_SIZE, diskDirectory, 8 * PACKAGE_SIZE);
+        assertEquals(2 * PACKAGE_SIZE, cache.getDiskBytes());
+        assertFalse(new File(diskDirectory, "leftover.tmp").exists());
+        assertArrayEquals(content(1), cache.get(md5(1)));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(new File(diskDirectory, md5(0)), cache.getDecodedFile(md5(0)));
+
+        cache.invalidate(md5(0));
+        assertFalse(new File(diskDirectory, md5(0)).exists());
+        assertEquals(PACKAGE_SIZE, cache.getDiskBytes());
+    }
+
+    @Test
+    public void memoryOnly() throws IOException {
+        DecodedPackageCache cache = new DecodedPackageCache(createStore(), PACKAGE_SIZE, PACKAGE_SIZE / 2, null, 0);
+        // too large to be kept in memory
+        cache.get(md5(0));
+        cache.get(md5(0));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getMemoryBytes());
+        assertNull(cache.getDecodedFile(md5(0)));
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            Utils.Copy(inputStream, outputStream);
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void streamsPackagesAboveMaxSize() throws IOException {
+        File diskDirectory = temporaryFolder.newFolder();
+        DecodedPackageCache cache = new DecodedPackageCache(createStore(), PACKAGE_SIZE / 2, 4 * PACKAGE_SIZE, diskDirectory, 4 * PACKAGE_SIZE);
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(1, cache.getStreamed());
+        assertEquals(0, cache.getMemoryBytes());
+        // decoded once into the on-disk tier, then served from there
+        assertEquals(PACKAGE_SIZE, cache.getDiskBytes());
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(new File(diskDirectory, md5(0)), cache.getDecodedFile(md5(0)));
+        assertFalse(new File(diskDirectory, md5(0) + ".tmp").exists());
+
+        File decodedFile = cache.getDecodedFile(md5(1));
+        assertEquals(PACKAGE_SIZE, decodedFile.length());
+        assertEquals(2, cache.getStreamed());
+        try {
+            cache.get(md5(2));
+            fail("Package above the maximum size should not be extracted whole");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void streamsPackagesAboveDiskBudget() throws IOException {
+        DecodedPackageCache cache = new DecodedPackageCache(createStore(), PACKAGE_SIZE / 2, 4 * PACKAGE_SIZE, temporaryFolder.newFolder(), PACKAGE_SIZE / 2);
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(2, cache.getStreamed());
+        assertEquals(0, cache.getDiskBytes());
+        assertNull(cache.getDecodedFile(md5(0)));
+    }
+
+    @Test
+    public void forgetsFilesRemovedByAnotherInstance() throws IOException {
+        PackageStore store = createStore();
+        File diskDirectory = temporaryFolder.newFolder();
+        DecodedPackageCache cache = new DecodedPackageCache(store, PACKAGE_SIZE, PACKAGE_SIZE, diskDirectory, 4 * PACKAGE_SIZE);
+        cache.get(md5(0));
+        cache.get(md5(1));
+        new DecodedPackageCache(store, PACKAGE_SIZE, 0, diskDirectory, 4 * PACKAGE_SIZE).invalidate(md5(0));
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(2 * PACKAGE_SIZE, cache.getDiskBytes());
+    }
+
+    @Test
+    public void opensCachedPackages() throws IOException {
+        DecodedPackageCache cache = new DecodedPackageCache(createStore(), PACKAGE_SIZE, PACKAGE_SIZE, temporaryFolder.newFolder(), 4 * PACKAGE_SIZE);
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(1, cache.getMemoryHits());
+        cache.get(md5(1));
+        // package 0 left memory, it is read from the on-disk tier
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getStreamed());
+    }
+
+    @Test
+    public void readsDiskTierThroughMappings() throws IOException {
+        PackageStore store = createStore();
+        File diskDirectory = temporaryFolder.newFolder();
+        MappedFilePool pool = new MappedFilePool(2);
+        DecodedPackageCache cache = new DecodedPackageCache(store, PACKAGE_SIZE, 0, diskDirectory, 4 * PACKAGE_SIZE, null, 1, pool);
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(0, pool.size());
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertArrayEquals(content(0), readAll(cache.open(md5(0))));
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+        cache.invalidate(md5(0));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void extractsBlocksInParallel() throws IOException, InterruptedException {
+        PackageStore store = new PackageStore(temporaryFolder.newFolder(), PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        byte[] content = content(0);
+        XZOutputStream xzOut = new XZOutputStream(new FileOutputStream(store.prepareFile(md5(0))), new LZMA2Options(1));
+        for (int offset = 0; offset < content.length; offset += PACKAGE_SIZE / 4) {
+            xzOut.write(content, offset, PACKAGE_SIZE / 4);
+            xzOut.endBlock();
+        }
+        xzOut.close();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DecodedPackageCache cache = new DecodedPackageCache(store, PACKAGE_SIZE, PACKAGE_SIZE, null, 0, executor, 2, null);
+            assertArrayEquals(content, cache.get(md5(0)));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import io.github.smutty_tools.smutty_viewer.Tools.Utils;
+
+import static org.junit.Assert.*;
+
+public class PackageReaderTest {
+
+    private static final int SIZE = 4 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int ITEM_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(1);
+        for (int i = 0; i < size; i += 64) {
+            Arrays.fill(data, i, Math.min(size, i + 64), (byte) random.nextInt(16));
+        }
+        return data;
+    }
+
+    private File writePlain(byte[] data) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(data);
+        outputStream.close();
+        return file;
+    }
+
+    private File writeXz(byte[] data) throws IOException {
+        File file = temporaryFolder.newFile();
+        XZOutputStream xzOut = new XZOutputStream(new FileOutputStream(file), new LZMA2Options(1));
+        for (int offset = 0; offset < data.length; offset += BLOCK_SIZE) {
+            xzOut.write(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+            xzOut.endBlock();
+        }
+        xzOut.close();
+        return file;
+    }
+
+    private static void checkRandomReads(PackageReader reader, byte[] data) throws IOException {
+        Random random = new Random(2);
+        byte[] bytes = new byte[ITEM_SIZE];
+        for (int i = 0; i < 200; i++) {
+            int offset = random.nextInt(data.length - ITEM_SIZE);
+            byte[] expected = Arrays.copyOfRange(data, offset, offset + ITEM_SIZE);
+            reader.read(offset, bytes, 0, ITEM_SIZE);
+            assertArrayEquals(expected, bytes);
+            ByteBuffer slice = reader.slice(offset, ITEM_SIZE);
+            assertEquals(ITEM_SIZE, slice.remaining());
+            byte[] sliced = new byte[ITEM_SIZE];
+            slice.get(sliced);
+            assertArrayEquals(expected, sliced);
+        }
+    }
+
+    @Test
+    public void readsPlainContent() throws IOException {
+        byte[] data = content(SIZE);
+        PackageReader reader = new PackageReader(new MappedFilePool(2), writePlain(data));
+        assertFalse(reader.isCompressed());
+        assertEquals(SIZE, reader.length());
+        checkRandomReads(reader, data);
+        assertTrue(reader.slice(0, 16).isReadOnly());
+        reader.close();
+    }
+
+    @Test
+    public void readsBlockIndexedXzContent() throws IOException {
+        byte[] data = content(SIZE);
+        PackageReader reader = new PackageReader(new MappedFilePool(2), writeXz(data));
+        assertTrue(reader.isCompressed());
+        assertEquals(SIZE, reader.length());
+        checkRandomReads(reader, data);
+        reader.close();
+    }
+
+    @Test
+    public void streamsWholeContent() throws IOException {
+        byte[] data = content(SIZE);
+        for (File file : new File[] { writePlain(data), writeXz(data) }) {
+            InputStream inputStream = new PackageReader(new MappedFilePool(2), file).openStream();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try {
+                Utils.Copy(inputStream, outputStream);
+            } finally {
+                inputStream.close();
+            }
+            assertArrayEquals(data, outputStream.toByteArray());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsRangePastEnd() throws IOException {
+        PackageReader reader = new PackageReader(new MappedFilePool(2), writePlain(content(1024)));
+        reader.slice(1000, 100);
+    }
+
+    @Test
+    public void poolIsBounded() throws IOException {
+        MappedFilePool pool = new MappedFilePool(2);
+        File first = writePlain(content(1024));
+        File second = writePlain(content(2048));
+        File third = writePlain(content(4096));
+        pool.acquire(first);
+        pool.acquire(second);
+        pool.acquire(first);
+        assertEquals(1, pool.getHits());
+        pool.acquire(third);
+        assertEquals(2, pool.size());
+        // second was the least recently used
+        pool.acquire(first);
+        assertEquals(2, pool.getHits());
+        pool.acquire(second);
+        assertEquals(4, pool.getMisses());
+    }
+
+    @Test
+    public void acquiredBuffersAreIndependent() throws IOException {
+        MappedFilePool pool = new MappedFilePool(1);
+        File file = writePlain(content(1024));
+        ByteBuffer first = pool.acquire(file);
+        ByteBuffer second = pool.acquire(file);
+        first.position(100);
+        assertEquals(0, second.position());
+        assertEquals(1024, second.remaining());
+    }
+}
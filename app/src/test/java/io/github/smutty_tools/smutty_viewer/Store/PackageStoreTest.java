@@ -0,0 +1,96 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PackageStoreTest {
+
+    private static final int FILES = 2000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String md5(int i) {
+        return String.format(Locale.ROOT, "%08x%024x", i * 2654435761L & 0xffffffffL, i);
+    }
+
+    private static void touch(File file) throws IOException {
+        assertTrue(file.createNewFile());
+    }
+
+    @Test
+    public void shardsByPrefix() throws Exception {
+        File base = temporaryFolder.getRoot();
+        PackageStore store = new PackageStore(base, 2, 1);
+        String md5 = "abcdef0123456789abcdef0123456789";
+        assertEquals(new File(new File(new File(base, "a"), "b"), md5), store.getFile(md5));
+        File file = store.prepareFile(md5);
+        assertTrue(file.getParentFile().isDirectory());
+        assertEquals(new File(new File(base, "ab"), md5), new PackageStore(base, 1, 2).getFile(md5));
+        assertEquals(new File(base, md5), new PackageStore(base, 0, 1).getFile(md5));
+    }
+
+    @Test
+    public void migratesFlatStoreAndListsEveryFile() throws Exception {
+        File base = temporaryFolder.getRoot();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < FILES; i++) {
+            touch(new File(base, md5(i)));
+            expected.add(md5(i));
+        }
+        touch(new File(base, md5(FILES) + ".part"));
+        expected.add(md5(FILES) + ".part");
+
+        PackageStore store = new PackageStore(base, PackageStore.DEFAULT_DEPTH, PackageStore.DEFAULT_WIDTH);
+        assertTrue(store.needsMigration());
+        assertEquals(FILES + 1, store.migrate());
+        assertFalse(store.needsMigration());
+
+        Set<String> listed = new HashSet<>();
+        for (File file : store) {
+            assertTrue(listed.add(file.getName()));
+            assertEquals(store.getShard(file.getName().substring(0, 32)), file.getParentFile());
+        }
+        assertEquals(expected, listed);
+        for (int i = 0; i < FILES; i++) {
+            assertTrue(store.getFile(md5(i)).exists());
+        }
+    }
+
+    @Test
+    public void migratesBetweenLayouts() throws Exception {
+        File base = temporaryFolder.getRoot();
+        PackageStore oldStore = new PackageStore(base, 2, 1);
+        for (int i = 0; i < 100; i++) {
+            touch(oldStore.prepareFile(md5(i)));
+        }
+        oldStore.writeLayout();
+        PackageStore newStore = new PackageStore(base, 1, 2);
+        assertTrue(newStore.needsMigration());
+        assertEquals(100, newStore.migrate());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(newStore.getFile(md5(i)).exists());
+        }
+        // old single character shards are gone
+        for (File child : base.listFiles()) {
+            assertTrue(child.getName().startsWith(".") || child.getName().length() == 2);
+        }
+        assertEquals(0, newStore.migrate());
+    }
+
+    @Test
+    public void emptyStoreNeedsNoMigration() {
+        PackageStore store = new PackageStore(temporaryFolder.getRoot(), 2, 1);
+        assertFalse(store.needsMigration());
+        assertFalse(store.iterator().hasNext());
+    }
+}
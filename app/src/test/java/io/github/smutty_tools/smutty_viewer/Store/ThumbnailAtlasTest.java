@@ -0,0 +1,124 @@
+package io.github.smutty_tools.smutty_viewer.Store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailAtlasTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static byte[] thumbnail(int id) {
+        byte[] data = new byte[100 + (id & 0xFF)];
+        new Random(id).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void readsThumbnailsInAnyOrder() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "0123" + ThumbnailAtlas.SUFFIX);
+        ThumbnailAtlasWriter writer = new ThumbnailAtlasWriter(file);
+        // ids of a package are not necessarily sorted
+        int[] ids = {500, -3, 42, 7, 100000, 0, 43};
+        for (int id : ids) {
+            byte[] data = thumbnail(id);
+            writer.add(id, data, 0, data.length);
+        }
+        assertEquals(ids.length, writer.commit());
+        assertTrue(ThumbnailAtlas.isAtlasFile(file));
+        assertFalse(new File(file.getPath() + ".part").exists());
+
+        MappedFilePool pool = new MappedFilePool(2);
+        ThumbnailAtlas atlas = ThumbnailAtlas.open(pool, file);
+        assertEquals(ids.length, atlas.size());
+        for (int id : ids) {
+            assertTrue(atlas.contains(id));
+            assertArrayEquals(thumbnail(id), readAll(atlas.open(id)));
+            ByteBuffer view = atlas.get(id);
+            assertEquals(thumbnail(id).length, view.remaining());
+        }
+        assertFalse(atlas.contains(1));
+        assertNull(atlas.get(41));
+        assertNull(atlas.open(Integer.MAX_VALUE));
+        // every lookup goes through the single mapping
+        ThumbnailAtlas.open(pool, file);
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    public void keepsFirstThumbnailOfDuplicateIds() throws IOException {
+        File file = temporaryFolder.newFile();
+        ThumbnailAtlasWriter writer = new ThumbnailAtlasWriter(file);
+        writer.add(5, new byte[]{1, 2}, 0, 2);
+        writer.add(3, new byte[]{3}, 0, 1);
+        writer.add(5, new byte[]{9, 9, 9}, 1, 2);
+        assertEquals(2, writer.commit());
+        ThumbnailAtlas atlas = ThumbnailAtlas.open(new MappedFilePool(1), file);
+        assertArrayEquals(new byte[]{1, 2}, readAll(atlas.open(5)));
+        assertArrayEquals(new byte[]{3}, readAll(atlas.open(3)));
+    }
+
+    @Test
+    public void writesEmptyAtlas() throws IOException {
+        File file = temporaryFolder.newFile();
+        assertEquals(0, new ThumbnailAtlasWriter(file).commit());
+        ThumbnailAtlas atlas = ThumbnailAtlas.open(new MappedFilePool(1), file);
+        assertEquals(0, atlas.size());
+        assertNull(atlas.open(0));
+    }
+
+    @Test
+    public void abortLeavesNoFile() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "aborted" + ThumbnailAtlas.SUFFIX);
+        ThumbnailAtlasWriter writer = new ThumbnailAtlasWriter(file);
+        writer.add(1, new byte[10], 0, 10);
+        writer.abort();
+        assertFalse(file.exists());
+        assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(new byte[64]);
+        outputStream.close();
+        ThumbnailAtlas.open(new MappedFilePool(1), file);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedAtlas() throws IOException {
+        File file = temporaryFolder.newFile();
+        ThumbnailAtlasWriter writer = new ThumbnailAtlasWriter(file);
+        writer.add(1, new byte[10], 0, 10);
+        writer.commit();
+        byte[] data = readAll(new java.io.FileInputStream(file));
+        // table claims an entry the file no longer holds
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(data, ThumbnailAtlas.ENTRY_SIZE, data.length - ThumbnailAtlas.ENTRY_SIZE);
+        outputStream.close();
+        ThumbnailAtlas.open(new MappedFilePool(1), file);
+    }
+}
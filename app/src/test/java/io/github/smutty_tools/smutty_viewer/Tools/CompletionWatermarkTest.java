@@ -0,0 +1,72 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CompletionWatermarkTest {
+
+    @Test
+    public void advancesOverContiguousPositions() {
+        CompletionWatermark watermark = new CompletionWatermark(0);
+        assertEquals(0, watermark.get());
+        watermark.complete(1);
+        watermark.complete(2);
+        // position 0 still pending
+        assertEquals(0, watermark.get());
+        watermark.complete(0);
+        assertEquals(3, watermark.get());
+        watermark.complete(4);
+        assertEquals(3, watermark.get());
+        watermark.complete(3);
+        assertEquals(5, watermark.get());
+    }
+
+    @Test
+    public void startsFromCheckpoint() {
+        CompletionWatermark watermark = new CompletionWatermark(10);
+        // positions below the checkpoint are ignored
+        watermark.complete(3);
+        assertEquals(10, watermark.get());
+        watermark.complete(11);
+        assertEquals(10, watermark.get());
+        watermark.complete(10);
+        assertEquals(12, watermark.get());
+    }
+
+    @Test
+    public void completesFromSeveralThreads() throws InterruptedException {
+        final int count = 100000;
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            positions.add(i);
+        }
+        Collections.shuffle(positions, new Random(1));
+        final CompletionWatermark watermark = new CompletionWatermark(0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (final int position : positions) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    watermark.complete(position);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(count, watermark.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeStart() {
+        new CompletionWatermark(-1);
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class Md5SetTest {
+
+    private static String randomMd5(Random random) {
+        return String.format(Locale.ROOT, "%016x%016x", random.nextLong(), random.nextLong());
+    }
+
+    @Test
+    public void containsAddedHashes() {
+        Random random = new Random(42);
+        Md5Set md5Set = new Md5Set();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            String md5 = randomMd5(random);
+            md5Set.add(md5);
+            expected.add(md5);
+        }
+        for (String md5 : expected) {
+            assertTrue(md5Set.contains(md5));
+            assertTrue(md5Set.contains(md5.toUpperCase(Locale.ROOT)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            String md5 = randomMd5(random);
+            assertEquals(expected.contains(md5), md5Set.contains(md5));
+        }
+        assertEquals(expected.size(), md5Set.size());
+    }
+
+    @Test
+    public void deduplicatesAndKeepsAddingAfterLookup() {
+        Md5Set md5Set = new Md5Set();
+        md5Set.add("0123456789abcdef0123456789abcdef");
+        md5Set.add("0123456789abcdef0123456789abcdef");
+        assertEquals(1, md5Set.size());
+        md5Set.add("ffffffffffffffffffffffffffffffff");
+        assertTrue(md5Set.contains("ffffffffffffffffffffffffffffffff"));
+        assertTrue(md5Set.contains("0123456789ABCDEF0123456789ABCDEF"));
+        assertEquals(2, md5Set.size());
+    }
+
+    @Test
+    public void rejectsInvalidHashes() {
+        Md5Set md5Set = new Md5Set();
+        assertFalse(md5Set.contains("not a hash"));
+        assertFalse(Md5Set.isMd5("0123456789abcdef0123456789abcdeg"));
+        assertFalse(Md5Set.isMd5(null));
+        try {
+            md5Set.add("abc");
+            fail("Invalid md5 should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sealedLookupsIgnoreLaterHashes() {
+        Md5Set md5Set = new Md5Set();
+        md5Set.add("0123456789abcdef0123456789abcdef");
+        assertFalse(md5Set.containsSealed("0123456789abcdef0123456789abcdef"));
+        md5Set.seal();
+        md5Set.add("ffffffffffffffffffffffffffffffff");
+        assertTrue(md5Set.containsSealed("0123456789abcdef0123456789abcdef"));
+        assertFalse(md5Set.containsSealed("ffffffffffffffffffffffffffffffff"));
+        md5Set.seal();
+        assertTrue(md5Set.containsSealed("ffffffffffffffffffffffffffffffff"));
+        assertFalse(md5Set.containsSealed("not an md5"));
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.smutty_tools.smutty_viewer.Tools;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SortedIntArraysTest {
+
+    private static int[] randomSorted(Random random, int count, int range) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextInt(range);
+        }
+        return Arrays.copyOf(values, SortedIntArrays.sortDistinct(values, count));
+    }
+
+    private static int[] naiveIntersect(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        int count = 0;
+        for (int value : a) {
+            if (Arrays.binarySearch(b, value) >= 0) {
+                result[count++] = value;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Test
+    public void sortsAndRemovesDuplicates() {
+        int[] values = { 5, 1, 5, 3, 1, 9, 0 };
+        int count = SortedIntArrays.sortDistinct(values, 6);
+        assertArrayEquals(new int[] { 1, 3, 5, 9 }, Arrays.copyOf(values, count));
+        assertEquals(0, SortedIntArrays.sortDistinct(new int[0], 0));
+    }
+
+    @Test
+    public void encodesCompactly() throws IOException {
+        int[] dense = new int[10000];
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = 1000000 + i * 3;
+        }
+        byte[] bytes = SortedIntArrays.encode(dense, dense.length);
+        assertTrue(bytes.length < dense.length + 10);
+        assertArrayEquals(dense, SortedIntArrays.decode(bytes));
+
+        int[] extremes = { Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE };
+        assertArrayEquals(extremes, SortedIntArrays.decode(SortedIntArrays.encode(extremes, extremes.length)));
+        assertArrayEquals(new int[0], SortedIntArrays.decode(SortedIntArrays.encode(new int[0], 0)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedEncoding() throws IOException {
+        byte[] bytes = SortedIntArrays.encode(new int[] { 1, 200, 40000 }, 3);
+        SortedIntArrays.decode(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void intersectsByMergeAndBySearch() {
+        Random random = new Random(1);
+        int[] large = randomSorted(random, 100000, 1000000);
+        int[] similar = randomSorted(random, 80000, 1000000);
+        int[] small = randomSorted(random, 100, 1000000);
+        assertArrayEquals(naiveIntersect(large, similar), SortedIntArrays.intersect(large, similar));
+        assertArrayEquals(naiveIntersect(small, large), SortedIntArrays.intersect(large, small));
+        assertArrayEquals(new int[0], SortedIntArrays.intersect(new int[0], large));
+    }
+}